@@ -99,6 +99,8 @@ public class Queue extends QmfAgentData
     {
         // Declare the schema for the QMF2 broker class.
         _schema = new SchemaObjectClass("org.apache.qpid.broker", "queue");
+        // Index by name so that tools looking up a single queue by name don't need to search every object.
+        _schema.setIndexNames("name");
 
         // TODO
         //_schema.addProperty(new SchemaProperty("whatHappened", QmfType.TYPE_STRING));
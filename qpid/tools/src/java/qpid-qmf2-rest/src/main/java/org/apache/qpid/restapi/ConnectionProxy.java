@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.BlockingNotifier;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.WorkQueue;
 import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.util.ConnectionHelper;
 
@@ -87,8 +88,8 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
                 // N.B. creating a Console with a notifier causes the internal WorkQueue to get populated, so care must
                 // be taken to manage its size. In a normal Console application the application would only declare this
                 // if there was an intention to retrieve work items, but in a fairly general REST API we can't guarantee
-                // that clients will. ConsoleLease acts to make the WorkQueue "circular" by deleting items from the
-                // front of the WorkQueue if it exceeds a particular size.
+                // that clients will. We use a bounded WorkQueue that drops the oldest items to make the WorkQueue
+                // "circular" so that it can't grow beyond a particular size.
                 if (_disableEvents)
                 {
                     _console = new Console(_name, null, null, null);
@@ -97,7 +98,8 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
                 else
                 {
                     BlockingNotifier notifier = new BlockingNotifier();
-                    _console = new Console(_name, null, notifier, null);
+                    _console = new Console(_name, null, notifier, null,
+                                           new WorkQueue(MAX_WORKITEM_QUEUE_SIZE, WorkQueue.OverflowPolicy.DROP_OLDEST));
                 }
                 _console.addConnection(_connection);
                 _connected = true;
@@ -182,9 +184,7 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
     /**
      * This method is called periodically by {@link org.apache.qpid.restapi.ConnectionStore} to carry out a number
      * of housekeeping tasks. It checks if the Qpid Connection is still connected and if not it attempts to reconnect
-     * it also checks whether the Connection "lease" has run out and if it has it tidies up the Connection. Finally
-     * it restricts the size of the QMF2 WorkItem queue as the REST API has no control over whether a client is or
-     * is not interested in being notified of QMF2 Events.
+     * it also checks whether the Connection "lease" has run out and if it has it tidies up the Connection.
      */
     public void run()
     {
@@ -192,11 +192,6 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
         {
             //System.out.println("ConnectionProxy name: " + _name + ", thread: " + Thread.currentThread().getId() + ", WorkItem count = " + _console.getWorkitemCount());
 
-            while (_console.getWorkitemCount() > MAX_WORKITEM_QUEUE_SIZE)
-            {
-                _console.getNextWorkitem();
-            }
-
             _expireCount--;
             //System.out.println("ConnectionProxy name: " + _name + ", thread: " + Thread.currentThread().getId() + ", expireCount = " + _expireCount);
             if (_expireCount == 0)
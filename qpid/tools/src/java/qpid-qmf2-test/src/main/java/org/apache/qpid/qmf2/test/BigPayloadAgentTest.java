@@ -24,6 +24,7 @@ import javax.jms.Connection;
 
 // Misc Imports
 import java.io.*;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,14 +51,22 @@ import static org.apache.qpid.qmf2.common.WorkItem.WorkItemType.*;
 /**
  * A class used to test the Agent API functionality. This Agent specifies an explicit queue name and a larger than
  * default queue size so that it can receive large payloads on its methods.
+ * <p>
+ * It also creates ITEM_COUNT "item" objects and sets a small query batch size, so that queries for them are
+ * answered with many partial (chunked) responses, which BigPayloadAgentTestConsole retrieves with the blocking,
+ * asynchronous and streaming query APIs.
  *
  * @author Fraser Adams
  */
 public final class BigPayloadAgentTest implements QmfEventListener
 {
+    public static final int ITEM_COUNT = 5000;
+    public static final int QUERY_BATCH_SIZE = 100;
+
     private Agent _agent;
     private QmfAgentData _control;
     private SchemaObjectClass _controlSchema;
+    private SchemaObjectClass _itemSchema;
 
     public BigPayloadAgentTest(String url)
     {
@@ -69,6 +78,7 @@ public final class BigPayloadAgentTest implements QmfEventListener
             _agent = new Agent(this);
             _agent.setVendor("test.com");
             _agent.setProduct("big-payload-agent");
+            _agent.setQueryBatchSize(QUERY_BATCH_SIZE); // Send query results in chunks of QUERY_BATCH_SIZE objects.
 
             System.out.println("Agent name: " + _agent.getName());
 
@@ -130,10 +140,18 @@ public final class BigPayloadAgentTest implements QmfEventListener
         createMethod.addArgument(new SchemaProperty("parameter", QmfType.TYPE_STRING, "{dir:IN}"));
         createMethod.addArgument(new SchemaProperty("return", QmfType.TYPE_STRING, "{dir:OUT}"));
         _controlSchema.addMethod(createMethod);
+
+        // Declare an item object, lots of these are created to test chunked query responses.
+        _itemSchema = new SchemaObjectClass(packageName, "item");
+        _itemSchema.addProperty(new SchemaProperty("name", QmfType.TYPE_STRING));
+        _itemSchema.addProperty(new SchemaProperty("index", QmfType.TYPE_INT));
+        _itemSchema.addProperty(new SchemaProperty("data", QmfType.TYPE_STRING));
+        _itemSchema.setIdNames("name");
  
         System.out.println("BigPayloadAgentTest Schema classes initialised OK");
 
         _agent.registerObjectClass(_controlSchema);
+        _agent.registerObjectClass(_itemSchema);
 
         System.out.println("BigPayloadAgentTest Schema classes registered OK");
     }
@@ -146,6 +164,20 @@ public final class BigPayloadAgentTest implements QmfEventListener
         _control.setValue("name", "controller");
         _agent.addObject(_control);
         System.out.println("BigPayloadAgentTest Schema control object added OK");
+
+        System.out.println("*** BigPayloadAgentTest creating " + ITEM_COUNT + " item objects ***");
+        char[] data = new char[1000];
+        Arrays.fill(data, 'x');
+        String payload = new String(data);
+        for (int i = 0; i < ITEM_COUNT; i++)
+        {
+            QmfAgentData item = new QmfAgentData(_itemSchema);
+            item.setValue("name", "item-" + i);
+            item.setValue("index", i);
+            item.setValue("data", payload);
+            _agent.addObject(item);
+        }
+        System.out.println("BigPayloadAgentTest item objects added OK");
     }
 
 
@@ -24,9 +24,17 @@ import javax.jms.Connection;
 
 // Misc Imports
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.ObjectId;
@@ -34,6 +42,8 @@ import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfFuture;
+import org.apache.qpid.qmf2.common.SchemaClassId;
 import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.console.Agent;
 import org.apache.qpid.qmf2.console.AgentAddedWorkItem;
@@ -42,6 +52,7 @@ import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.console.EventReceivedWorkItem;
 import org.apache.qpid.qmf2.console.MethodResult;
 import org.apache.qpid.qmf2.console.MethodResponseWorkItem;
+import org.apache.qpid.qmf2.console.ObjectBatchListener;
 import org.apache.qpid.qmf2.console.ObjectUpdateWorkItem;
 import org.apache.qpid.qmf2.console.QmfConsoleData;
 import org.apache.qpid.qmf2.util.ConnectionHelper;
@@ -51,8 +62,12 @@ import static org.apache.qpid.qmf2.common.WorkItem.WorkItemType.*;
  * This class is the Console part of AgentTest which together provide a test of a number of core Console and
  * Agent behaviours such as Schema creation, registration and lookup, Object lookup, method invocation on Objects
  * Object refreshing (updating state of local proxy objects from the real Agent).
+ * <p>
+ * It also queries for the Agent's "item" objects, which the Agent returns in many partial (chunked) responses,
+ * using the blocking getObjects(), the QmfFuture based getObjectsAsync() and refreshAsync() and the streaming
+ * streamObjects() APIs, checking that every object is received exactly once.
  *
- * N.B. AgentTest needs to be running for this test to behave as expected.
+ * N.B. BigPayloadAgentTest needs to be running for this test to behave as expected.
  *
  * @author Fraser Adams
  */
@@ -104,6 +119,8 @@ public final class BigPayloadAgentTestConsole implements QmfEventListener
 
                 byte[] returnVal = results.getValue("return");        
                 System.out.println("returnVal size = " + returnVal.length);
+
+                testChunkedQueries();
             }
             else
             {
@@ -118,6 +135,203 @@ public final class BigPayloadAgentTestConsole implements QmfEventListener
         }
     }
 
+    /**
+     * Check that a List of item objects contains every item exactly once.
+     */
+    private void checkItems(final String test, final List<QmfConsoleData> items)
+    {
+        Set<String> names = new HashSet<String>();
+        for (QmfConsoleData item : items)
+        {
+            names.add(item.getStringValue("name"));
+        }
+
+        System.out.println(test + " returned " + items.size() + " items");
+        if (items.size() != BigPayloadAgentTest.ITEM_COUNT || names.size() != BigPayloadAgentTest.ITEM_COUNT)
+        {
+            System.out.println(test + " returned an unexpected set of items: BigPayloadAgentTestConsole failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Query for the item objects, which the Agent returns in chunks, using each of the query APIs.
+     */
+    private void testChunkedQueries() throws QmfException
+    {
+        SchemaClassId itemClass = new SchemaClassId("com.test.bigagent", "item");
+
+        // ********** Blocking getObjects() reassembles the chunked responses **********
+        System.out.println("Testing getObjects(com.test.bigagent, item)");
+        checkItems("getObjects()", _console.getObjects("com.test.bigagent", "item"));
+
+        // ********** QmfFuture based getObjectsAsync() and refreshAsync() **********
+        System.out.println("Testing getObjectsAsync(agent, item)");
+        QmfFuture<List<QmfConsoleData>> future = _console.getObjectsAsync(_agent, itemClass, -1);
+        final int[] listenerCount = {0};
+        final CountDownLatch listenerCalled = new CountDownLatch(1);
+        future.addListener(new QmfFuture.Listener<List<QmfConsoleData>>()
+        {
+            public void onComplete(QmfFuture<List<QmfConsoleData>> f)
+            {
+                synchronized (listenerCount)
+                {
+                    listenerCount[0] = (f.getResult() == null) ? -1 : f.getResult().size();
+                }
+                listenerCalled.countDown();
+            }
+        });
+
+        List<QmfConsoleData> items = null;
+        try
+        {
+            items = future.get(30, TimeUnit.SECONDS);
+        }
+        catch (Exception e)
+        {
+            System.out.println("getObjectsAsync() failed with " + e + ": BigPayloadAgentTestConsole failed");
+            System.exit(1);
+        }
+        checkItems("getObjectsAsync()", items);
+        try
+        { // get() may return before the Listener has been called, so wait for it.
+            listenerCalled.await(30, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ie)
+        {
+        }
+        synchronized (listenerCount)
+        {
+            if (listenerCount[0] != BigPayloadAgentTest.ITEM_COUNT)
+            {
+                System.out.println("QmfFuture Listener wasn't called correctly: BigPayloadAgentTestConsole failed");
+                System.exit(1);
+            }
+        }
+
+        System.out.println("Testing refreshAsync()");
+        try
+        {
+            QmfConsoleData refreshed = _console.refreshAsync(_agent, items.get(0).getObjectId(), -1)
+                                               .get(30, TimeUnit.SECONDS);
+            if (refreshed == null || !refreshed.getObjectId().equals(items.get(0).getObjectId()))
+            {
+                System.out.println("refreshAsync() returned the wrong object: BigPayloadAgentTestConsole failed");
+                System.exit(1);
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("refreshAsync() failed with " + e + ": BigPayloadAgentTestConsole failed");
+            System.exit(1);
+        }
+
+        // ********** streamObjects() delivers each chunk as a batch **********
+        System.out.println("Testing streamObjects(agent, item)");
+        final List<QmfConsoleData> streamed = new ArrayList<QmfConsoleData>();
+        final int[] batches = {0};
+        boolean complete = _console.streamObjects(_agent, itemClass, -1, new ObjectBatchListener()
+        {
+            public boolean onBatch(List<QmfConsoleData> batch)
+            {
+                batches[0]++;
+                streamed.addAll(batch);
+                return true;
+            }
+        });
+        System.out.println("streamObjects() delivered " + batches[0] + " batches");
+        if (!complete || batches[0] < 2)
+        {
+            System.out.println("streamObjects() didn't stream chunked results: BigPayloadAgentTestConsole failed");
+            System.exit(1);
+        }
+        checkItems("streamObjects()", streamed);
+
+        System.out.println("Testing streamObjects() stopped after the first batch");
+        batches[0] = 0;
+        complete = _console.streamObjects(_agent, itemClass, -1, new ObjectBatchListener()
+        {
+            public boolean onBatch(List<QmfConsoleData> batch)
+            {
+                batches[0]++;
+                return false;
+            }
+        });
+        if (complete || batches[0] != 1)
+        {
+            System.out.println("streamObjects() didn't stop early: BigPayloadAgentTestConsole failed");
+            System.exit(1);
+        }
+
+        // The late responses from the stopped query must not disturb a subsequent query.
+        checkItems("getObjects() after early stop", _console.getObjects("com.test.bigagent", "item"));
+
+        // ********** Compare the cost of retrieving every item in bulk with streaming them **********
+        System.gc();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        List<QmfConsoleData> bulk = _console.getObjects("com.test.bigagent", "item");
+        long bulkTime = System.nanoTime() - start;
+        long bulkHeap = getPeakHeap();
+        checkItems("getObjects() bulk", bulk);
+        bulk = null;
+
+        System.gc();
+        resetPeakHeap();
+        final int[] streamedCount = {0};
+        start = System.nanoTime();
+        _console.streamObjects(_agent, itemClass, -1, new ObjectBatchListener()
+        {
+            public boolean onBatch(List<QmfConsoleData> batch)
+            {
+                streamedCount[0] += batch.size();
+                return true;
+            }
+        });
+        long streamTime = System.nanoTime() - start;
+        long streamHeap = getPeakHeap();
+        if (streamedCount[0] != BigPayloadAgentTest.ITEM_COUNT)
+        {
+            System.out.println("streamObjects() returned " + streamedCount[0] +
+                               " items: BigPayloadAgentTestConsole failed");
+            System.exit(1);
+        }
+
+        System.out.println("getObjects() took " + bulkTime/1000000 + "ms with peak heap " + bulkHeap/1024 + "KB");
+        System.out.println("streamObjects() took " + streamTime/1000000 + "ms with peak heap " +
+                           streamHeap/1024 + "KB");
+    }
+
+    /**
+     * Reset the peak usage of the heap memory pools.
+     */
+    private static void resetPeakHeap()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Return the sum of the peak usage of the heap memory pools since they were last reset.
+     */
+    private static long getPeakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
     public void onEvent(WorkItem wi)
     {
         //System.out.println("WorkItem type: " + wi.getType());
@@ -32,10 +32,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 // QMF2 Imports
+import org.apache.qpid.qmf2.common.BlockingNotifier;
 import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
@@ -43,10 +43,12 @@ import org.apache.qpid.qmf2.common.QmfException;
 import org.apache.qpid.qmf2.common.QmfQuery;
 import org.apache.qpid.qmf2.common.QmfQueryTarget;
 import org.apache.qpid.qmf2.common.SchemaClassId;
+import org.apache.qpid.qmf2.common.StringMatcher;
 import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.console.Agent;
 import org.apache.qpid.qmf2.console.AgentHeartbeatWorkItem;
 import org.apache.qpid.qmf2.console.AgentRestartedWorkItem;
+import org.apache.qpid.qmf2.console.CoalescingWorkQueue;
 import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.console.QmfConsoleData;
 
@@ -130,7 +132,7 @@ public final class QpidQueueStats implements QmfEventListener
     "                        mechanism - use this option to override.\n";
 
     private final String _url;
-    private final List<Pattern> _filter;
+    private final List<StringMatcher> _filter;
     private Agent _broker;
     private Console _console;
     private Map<ObjectId, Stats> _objects = new HashMap<ObjectId, Stats>();
@@ -152,11 +154,33 @@ public final class QpidQueueStats implements QmfEventListener
             System.out.println("Filter = " + filter);
         }
         _url = url;
-        _filter = filter;
+        _filter = new ArrayList<StringMatcher>(filter.size());
+        for (Pattern x : filter)
+        {
+            _filter.add(StringMatcher.compile(x));
+        }
         try
         {
             Connection connection = ConnectionHelper.createConnection(url, connectionOptions);        
-            _console = new Console(this);
+
+            // We only need the latest state of each queue, so we use a CoalescingWorkQueue and retrieve the
+            // WorkItems on a separate Thread. If we fall behind the broker any pending statistics for a queue are
+            // replaced by the latest ones rather than being displayed one stale sample at a time.
+            _console = new Console(null, null, new BlockingNotifier(), null, new CoalescingWorkQueue());
+            Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    WorkItem wi;
+                    while ((wi = _console.getNextWorkitem()) != null)
+                    {
+                        onEvent(wi);
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+
             _console.addConnection(connection);
 
             // Wait until the broker Agent has been discovered
@@ -253,10 +277,9 @@ public final class QpidQueueStats implements QmfEventListener
                             String name = stats.getName();
 
                             boolean matches = false;
-                            for (Pattern x : _filter)
+                            for (StringMatcher x : _filter)
                             { // Check the queue name against the regexes in the filter List (if any)
-                                Matcher m = x.matcher(name);
-                                if (m.find())
+                                if (x.find(name))
                                 {
                                     matches = true;
                                     break;
@@ -32,16 +32,17 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.OrderedEventDispatcher;
 import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
 import org.apache.qpid.qmf2.common.QmfException;
 import org.apache.qpid.qmf2.common.SchemaClassId;
+import org.apache.qpid.qmf2.common.StringMatcher;
 import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.console.Agent;
 import org.apache.qpid.qmf2.console.Console;
@@ -154,7 +155,7 @@ public final class QueueFuse implements QmfEventListener
     "                        mechanism - use this option to override.\n";
 
     private final String _url;
-    private final List<Pattern> _filter;
+    private final List<StringMatcher> _filter;
     private final float _purge;
     private Map<String, QmfConsoleData> _queueCache = new HashMap<String, QmfConsoleData>(50);
     private Console _console;
@@ -174,12 +175,19 @@ public final class QueueFuse implements QmfEventListener
             System.out.println("Filter = " + filter);
         }
         _url = url;
-        _filter = filter;
+        _filter = new ArrayList<StringMatcher>(filter.size());
+        for (Pattern x : filter)
+        {
+            _filter.add(StringMatcher.compile(x));
+        }
         _purge = purge;
         try
         {
             Connection connection = ConnectionHelper.createConnection(url, connectionOptions);        
-            _console = new Console(this);
+            // purgeQueue() makes a blocking invokeMethod() call, so we deliver WorkItems on a separate thread
+            // rather than the JMS MessageListener thread to avoid delaying the Console's heartbeat processing.
+            // A single thread keeps the WorkItems in order, so onEvent() doesn't need to be thread safe.
+            _console = new Console(new OrderedEventDispatcher(this, 1, OrderedEventDispatcher.Ordering.AGENT));
             _console.addConnection(connection);
             updateQueueCache();
         }
@@ -261,10 +269,9 @@ public final class QueueFuse implements QmfEventListener
             {
                 String queueName = event.getStringValue("qName");
                 boolean matches = false;
-                for (Pattern x : _filter)
+                for (StringMatcher x : _filter)
                 { // Check the queue name against the regexes in the filter List (if any)
-                    Matcher m = x.matcher(queueName);
-                    if (m.find())
+                    if (x.find(queueName))
                     {
                         matches = true;
                         break;
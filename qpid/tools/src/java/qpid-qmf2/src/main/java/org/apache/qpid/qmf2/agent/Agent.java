@@ -37,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -46,6 +47,9 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.AMQPMessage;
@@ -217,6 +221,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 {
                     _log.debug("Removing deleted QmfAgentData Object from store");
                     i.remove();
+                    unindexObject(object);
                 }
             }
         }
@@ -244,15 +249,43 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     private Map<ObjectId, QmfAgentData> _objectIndex = new ConcurrentHashMap<ObjectId, QmfAgentData>(100);
 
+    /**
+     * _classIndex and _packageIndex are secondary indexes of the QmfAgentData objects held in _objectIndex keyed
+     * by SchemaClassId className and packageName respectively. They are maintained by addObject() and by the
+     * deleted object reaper and allow queries by SchemaClassId to only touch the objects of the requested class.
+     */
+    private Map<String, ConcurrentMap<ObjectId, QmfAgentData>> _classIndex =
+        new ConcurrentHashMap<String, ConcurrentMap<ObjectId, QmfAgentData>>();
+    private Map<String, ConcurrentMap<ObjectId, QmfAgentData>> _packageIndex =
+        new ConcurrentHashMap<String, ConcurrentMap<ObjectId, QmfAgentData>>();
+
+    /**
+     * _propertyIndex indexes the QmfAgentData objects held in _objectIndex by the values of the properties named
+     * by the index names of the registered SchemaObjectClasses, allowing "eq" predicates to be looked up directly.
+     */
+    private PropertyIndex _propertyIndex = new PropertyIndex();
+
+    /**
+     * _changeLog records the QmfAgentData objects held in _objectIndex that have changed, so that Subscriptions
+     * need only evaluate their query against objects that have changed since they last published.
+     */
+    private ChangeLog _changeLog = new ChangeLog();
+
     /**
      * This Map is used to look up Subscriptions by SubscriptionId
      */
     private Map<String, Subscription> _subscriptions = new ConcurrentHashMap<String, Subscription>();
 
+    /**
+     * This Map is used to look up the SubscriptionGroup shared by Subscriptions with the same query and publish
+     * interval, so that the query is evaluated and the results encoded once for all of the group's members.
+     */
+    private Map<List<Object>, SubscriptionGroup> _subscriptionGroups = new HashMap<List<Object>, SubscriptionGroup>();
+
     /**
      * Used to implement a thread safe queue of WorkItem objects used to implement the Notifier API
      */
-    private WorkQueue _workQueue = new WorkQueue();
+    private final WorkQueue _workQueue;
 
     /**
      * If a name is supplied, it must be unique across all attached to the AMQP bus under the given domain.
@@ -289,6 +322,34 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     private int _heartbeatInterval = 30;
 
+    /**
+     * The maximum number of QmfAgentData objects sent in each _query_response message. If a query matches more
+     * objects than this the results are sent as a sequence of messages, all but the last of which are flagged as
+     * "partial". The default of zero means that results are never chunked, which is the original behaviour.
+     */
+    private int _queryBatchSize = Integer.getInteger("qmf.agent.query.batch.size", 0);
+
+    /**
+     * The minimum number of candidate objects that a ForkJoin QueryTask evaluates sequentially.
+     */
+    private static final int MIN_QUERY_LEAF_SIZE = 1024;
+
+    /**
+     * If an OBJECT query has more candidate objects than this they are evaluated in parallel using _queryPool.
+     * Zero or less means that queries are always evaluated on the calling thread.
+     */
+    private volatile int _parallelQueryThreshold = Integer.getInteger("qmf.agent.query.parallel.threshold", 10000);
+
+    /**
+     * The ForkJoinPool used to evaluate queries with a large number of candidate objects, created on first use.
+     */
+    private ForkJoinPool _queryPool = null;
+
+    /**
+     * Set by destroy(), after which _queryPool is not recreated and queries are evaluated on the calling thread.
+     */
+    private boolean _queryPoolShutdown = false;
+
     /**
      * The domain string is used to construct the name of the AMQP exchange to which the component's 
      * name string will be bound. If not supplied, the value of the domain defaults to "default". Both
@@ -447,44 +508,34 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 }
                 else
                 {
-                    // Look up QmfAgentData objects by the SchemaClassId obtained from the query
-                    // This is implemented by a linear search and allows searches with only the className specified.
-                    // Linear searches clearly don't scale brilliantly, but the number of QmfAgentData objects managed
-                    // by an Agent is generally fairly small, so it should be OK. Note that this is the same approach
-                    // taken by the C++ broker ManagementAgent, so if it's a problem here........
-
-                    // N.B. the results list declared here is a generic List of Objects. We *must* only pass a List of
-                    // Map to queryResponse(), but conversely if the response items are sortable we need to sort them
-                    // before doing mapEncode(). Unfortunately we don't know if the items are sortable a priori so
-                    // we either add a Map or we add a QmfAgentData, then sort then mapEncode() each item. I'm not
-                    // sure of a more elegant way to do this without creating two lists, which might not be so bad
-                    // but we don't know the size of the list a priori either.
-                    List results = new ArrayList(_objectIndex.size());
+                    // Look up QmfAgentData objects by evaluating the query. For queries by SchemaClassId the
+                    // candidates are taken from the class or package index so we only touch objects of the
+                    // requested class, other queries are evaluated by a linear search of the object store.
+                    // Large candidate sets are evaluated in parallel, see findObjects().
+
+                    // N.B. we collect the QmfAgentData objects rather than their mapEncoded form. If the response
+                    // items are sortable we need to sort them before doing mapEncode() and if results are being
+                    // chunked we only want to mapEncode() each chunk as it is sent to avoid holding an encoded copy
+                    // of the whole result set in memory.
+                    List<QmfAgentData> results = findObjects(query);
                     // It's unlikely that evaluating this query will return a mixture of sortable and notSortable 
-                    // QmfAgentData objects, but it's best to check if that has occurred as accidentally passing a
-                    // List of QmfAgentData instead of a List of Map to queryResponse() will break things.
+                    // QmfAgentData objects, but it's best to check if that has occurred.
                     boolean sortable = false;
                     boolean notSortable = false;
-                    for (QmfAgentData object : _objectIndex.values())
+                    for (QmfAgentData object : results)
                     {
-                        if (!object.isDeleted() && query.evaluate(object))
+                        if (object.isSortable())
                         {
-                            if (object.isSortable())
-                            { // If QmfAgentData is marked sortable we add the QmfAgentData object to the List
-                              // so we can sort first before mapEncoding.
-                                results.add(object);
-                                sortable = true;
-                            }
-                            else
-                            { // If QmfAgentData is not marked sortable we mapEncode immediately and add the Map to List.
-                                results.add(object.mapEncode());
-                                notSortable = true;
-                            }
+                            sortable = true;
+                        }
+                        else
+                        {
+                            notSortable = true;
                         }
                     }
 
                     // If both flags have been set something has gone a bit weird, so we log an error and clear the
-                    // results List to avoid sending unconvertable data. Hopefully this condition should never occur.
+                    // results List to avoid sending inconsistent data. Hopefully this condition should never occur.
                     if (sortable && notSortable)
                     {
                         _log.info("Query resulted in inconsistent mixture of sortable and non-sortable data.");
@@ -493,14 +544,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                     else if (sortable)
                     {
                         Collections.sort(results);
-                        int length = results.size();
-                        for (int i = 0; i < length; i++)
-                        {
-                            QmfAgentData object = (QmfAgentData)results.get(i);
-                            results.set(i, object.mapEncode());
-                        }
                     }
-                    queryResponse(handle, results, "_data"); // Send the response back to the Console.
+                    objectQueryResponse(handle, results); // Send the response back to the Console.
                 }
             }
         }
@@ -511,6 +556,166 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         }
     } // end of handleQueryRequest()
 
+    /**
+     * Add a QmfAgentData to the class, package and property indexes, replacing any (deleted) object with the same
+     * ObjectId, and associate it with the store's ChangeLog.
+     * @param object the QmfAgentData being added to the object store.
+     */
+    private final void indexObject(final QmfAgentData object)
+    {
+        SchemaClassId classId = object.getSchemaClassId();
+        if (classId != null)
+        {
+            getIndexEntry(_classIndex, classId.getClassName()).put(object.getObjectId(), object);
+            getIndexEntry(_packageIndex, classId.getPackageName()).put(object.getObjectId(), object);
+        }
+        _propertyIndex.add(object);
+        object.setChangeLog(_changeLog);
+    }
+
+    /**
+     * Remove a QmfAgentData from the class, package and property indexes and from the store's ChangeLog. The object
+     * is only removed from the class and package indexes if it is still the object indexed against its ObjectId,
+     * as the ObjectId of a deleted object may have been reused by addObject().
+     * @param object the QmfAgentData being removed from the object store.
+     */
+    private final void unindexObject(final QmfAgentData object)
+    {
+        SchemaClassId classId = object.getSchemaClassId();
+        if (classId != null)
+        {
+            ConcurrentMap<ObjectId, QmfAgentData> entry = _classIndex.get(classId.getClassName());
+            if (entry != null)
+            {
+                entry.remove(object.getObjectId(), object);
+            }
+            entry = _packageIndex.get(classId.getPackageName());
+            if (entry != null)
+            {
+                entry.remove(object.getObjectId(), object);
+            }
+        }
+        _propertyIndex.remove(object);
+        object.setChangeLog(null);
+        _changeLog.remove(object);
+    }
+
+    /**
+     * Look up the index entry for the specified key, creating it if necessary.
+     * @param index the index (_classIndex or _packageIndex) to look up.
+     * @param key the className or packageName.
+     * @return the Map of QmfAgentData objects indexed against the key.
+     */
+    private static ConcurrentMap<ObjectId, QmfAgentData> getIndexEntry(
+        final Map<String, ConcurrentMap<ObjectId, QmfAgentData>> index, final String key)
+    {
+        ConcurrentMap<ObjectId, QmfAgentData> entry = index.get(key);
+        if (entry == null)
+        {
+            synchronized(index)
+            {
+                entry = index.get(key);
+                if (entry == null)
+                {
+                    entry = new ConcurrentHashMap<ObjectId, QmfAgentData>();
+                    index.put(key, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Return the QmfAgentData objects that need to be evaluated against an OBJECT query. For an ID query by
+     * SchemaClassId this is the class index entry (or the package index entry if only the packageName has been
+     * specified). For a PREDICATE query containing an "eq" or "in" on an indexed property it's the matching property
+     * index entries, otherwise it's every object in the store. Note that the returned objects must still be evaluated
+     * against the query, as the indexes may return a superset of the matching objects and include deleted objects.
+     * @param query the QmfQuery being evaluated.
+     * @return the QmfAgentData objects that need to be evaluated against the query.
+     */
+    private final Collection<QmfAgentData> getCandidates(final QmfQuery query)
+    {
+        SchemaClassId classId = query.getSchemaClassId();
+        if (query.getPredicate() == null && classId != null)
+        {
+            Map<ObjectId, QmfAgentData> entry = null;
+            if (classId.getClassName().length() > 0)
+            {
+                entry = _classIndex.get(classId.getClassName());
+            }
+            else if (classId.getPackageName().length() > 0)
+            {
+                entry = _packageIndex.get(classId.getPackageName());
+            }
+            else
+            {
+                return _objectIndex.values();
+            }
+            return (entry == null) ? Collections.<QmfAgentData>emptyList() : entry.values();
+        }
+        else if (query.getExpression() != null)
+        {
+            Collection<QmfAgentData> candidates = _propertyIndex.lookup(query.getExpression());
+            if (candidates != null)
+            {
+                return candidates;
+            }
+        }
+        return _objectIndex.values();
+    }
+
+    /**
+     * Evaluate an OBJECT query over its candidate objects, excluding objects marked as deleted. If there are more
+     * candidates than the parallel query threshold they are evaluated in parallel by a ForkJoin QueryTask. In either
+     * case the matching objects are returned in the order that the candidates were iterated in, so sorting the
+     * results gives the same order whether or not they were evaluated in parallel.
+     * @param query the QmfQuery being evaluated.
+     * @return a List of the QmfAgentData objects that match the query.
+     */
+    private final List<QmfAgentData> findObjects(final QmfQuery query)
+    {
+        Collection<QmfAgentData> candidates = getCandidates(query);
+        int threshold = _parallelQueryThreshold;
+        ForkJoinPool pool = (threshold > 0 && candidates.size() > threshold) ? getQueryPool() : null;
+        if (pool != null)
+        { // N.B. toArray() on a concurrent collection returns an array sized to the elements actually present.
+            QmfAgentData[] objects = candidates.toArray(new QmfAgentData[0]);
+            int leafSize = Math.max(MIN_QUERY_LEAF_SIZE, objects.length/(4*pool.getParallelism()));
+            try
+            {
+                return pool.invoke(new QueryTask(query, objects, 0, objects.length, leafSize));
+            }
+            catch (RejectedExecutionException ree)
+            { // The Agent has been destroyed since getQueryPool() was called, so evaluate on this thread instead.
+                _log.debug("RejectedExecutionException {} caught in findObjects()", ree.getMessage());
+            }
+        }
+
+        List<QmfAgentData> results = new ArrayList<QmfAgentData>();
+        for (QmfAgentData object : candidates)
+        {
+            if (!object.isDeleted() && query.evaluate(object))
+            {
+                results.add(object);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Return the ForkJoinPool used to evaluate queries in parallel, creating it on first use.
+     * @return the ForkJoinPool used to evaluate queries in parallel, or null if the Agent has been destroyed.
+     */
+    private final synchronized ForkJoinPool getQueryPool()
+    {
+        if (_queryPool == null && !_queryPoolShutdown)
+        {
+            _queryPool = new ForkJoinPool();
+        }
+        return _queryPool;
+    }
+
     /**
      * Return a QmfAgentData from the internal Object store given its ObjectId.
      * N.B. This method isn't part of the *official* QMF2 public API, however it is pretty useful and probably
@@ -595,33 +800,60 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     public final List<QmfAgentData> evaluateQuery(final QmfQuery query)
     {
-        List<QmfAgentData> results = new ArrayList<QmfAgentData>(_objectIndex.size());
         if (query.getTarget() == QmfQueryTarget.OBJECT)
         { // Note that we don't include objects marked as deleted in the results here, because if an object gets
           // destroyed we asynchronously publish its new state to subscribers, see QmfAgentData.destroy() method.
-            if (query.getObjectId() != null)
+            if (query.getObjectId() == null)
             {
-                // Look up a QmfAgentData object by the ObjectId obtained from the query
-                ObjectId objectId = query.getObjectId();
-                QmfAgentData object = _objectIndex.get(objectId);
-                if (object != null && !object.isDeleted())
-                {
-                    results.add(object);
-                }
+                // Look up QmfAgentData objects evaluating the query, in parallel if there are many candidates
+                return findObjects(query);
             }
-            else
+
+            // Look up a QmfAgentData object by the ObjectId obtained from the query
+            ObjectId objectId = query.getObjectId();
+            QmfAgentData object = _objectIndex.get(objectId);
+            if (object != null && !object.isDeleted())
             {
-                // Look up QmfAgentData objects evaluating the query
-                for (QmfAgentData object : _objectIndex.values())
-                {
-                    if (!object.isDeleted() && query.evaluate(object))
-                    {
-                        results.add(object);
-                    }
-                }
+                List<QmfAgentData> results = new ArrayList<QmfAgentData>(1);
+                results.add(object);
+                return results;
             }
         }
-        return results;
+        return new ArrayList<QmfAgentData>();
+    }
+
+    /**
+     * Add a new Subscription, making it a member of the SubscriptionGroup for its query and publish interval and
+     * creating and scheduling the group if necessary. The new Subscription's initial results are published as soon
+     * as possible and subsequent updates are published by the group.
+     *
+     * @param subscription the new Subscription.
+     */
+    private final void addSubscription(final Subscription subscription)
+    {
+        _subscriptions.put(subscription.getSubscriptionId(), subscription);
+        final SubscriptionGroup group;
+        synchronized(_subscriptionGroups)
+        {
+            List<Object> key = SubscriptionGroup.createKey(subscription);
+            SubscriptionGroup existing = _subscriptionGroups.get(key);
+            if (existing == null)
+            {
+                existing = new SubscriptionGroup(this, subscription.getQuery(), _changeLog);
+                _subscriptionGroups.put(key, existing);
+                _timer.schedule(existing, subscription.getInterval(), subscription.getInterval());
+            }
+            group = existing;
+            group.add(subscription);
+        }
+
+        _timer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                group.initialise();
+            }
+        }, 0);
     }
 
     /**
@@ -632,6 +864,16 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     public final void removeSubscription(final Subscription subscription)
     {
         _subscriptions.remove(subscription.getSubscriptionId());
+        synchronized(_subscriptionGroups)
+        {
+            List<Object> key = SubscriptionGroup.createKey(subscription);
+            SubscriptionGroup group = _subscriptionGroups.get(key);
+            if (group != null && group.remove(subscription))
+            {
+                _subscriptionGroups.remove(key);
+                group.cancel();
+            }
+        }
     }
 
     //                                          MessageListener
@@ -714,8 +956,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                         {
                             Subscription subscription = new Subscription(this, subscriptionParams);
                             String subscriptionId = subscription.getSubscriptionId();
-                            _subscriptions.put(subscriptionId, subscription);
-                            _timer.schedule(subscription, 0, subscriptionParams.getPublishInterval());
+                            addSubscription(subscription);
                             subscriptionResponse(handle, subscription.getConsoleHandle(), subscriptionId, 
                                                  subscription.getDuration(), subscription.getInterval(), null);
                         }
@@ -852,6 +1093,31 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     public Agent(final String name, final String domain,
                  final QmfCallback notifier, final int interval) throws QmfException
     {
+        this(name, domain, notifier, interval, new WorkQueue());
+    }
+
+    /**
+     * Creates an Agent that uses the supplied WorkQueue, but does NOT start it, that requires us to do
+     * setConnection(). This allows applications to supply a bounded WorkQueue so that the number of pending
+     * WorkItems is limited if the application falls behind.
+     * <p>
+     * This constructor is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param name the Agent name in the format <pre>&lt;vendor&gt;:&lt;product&gt;[:&lt;instance&gt;]</pre>
+     * @param domain the QMF "domain", if not supplied, the value of the domain defaults to "default".
+     * @param notifier this may be either a QMF2 API Notifier object OR a QMFEventListener.
+     * @param interval is the heartbeat interval in seconds.
+     * @param workQueue the WorkQueue that WorkItems are added to when notifier is a Notifier.
+     */
+    public Agent(final String name, final String domain, final QmfCallback notifier,
+                 final int interval, final WorkQueue workQueue) throws QmfException
+    {
+        if (workQueue == null)
+        {
+            throw new QmfException("Agent WorkQueue must not be null");
+        }
+        _workQueue = workQueue;
+
         if (name != null)
         {
             String[] split = name.split(":");
@@ -953,11 +1219,72 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         _epoch = epoch;
     }
 
+    /**
+     * Returns the maximum number of QmfAgentData objects sent in each _query_response message.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @return the maximum number of QmfAgentData objects sent in each _query_response message, zero means unlimited.
+     */
+    public final int getQueryBatchSize()
+    {
+        return _queryBatchSize;
+    }
+
+    /**
+     * Set the maximum number of QmfAgentData objects sent in each _query_response message. Queries matching more
+     * objects than this are answered with a sequence of messages flagged as "partial", which the Console reassembles.
+     * This bounds the size of each response message and the amount of encoded data the Agent holds at any one time.
+     * The default may also be set via the "qmf.agent.query.batch.size" system property.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @param batchSize the maximum number of QmfAgentData objects per message, zero or less disables chunking.
+     */
+    public final void setQueryBatchSize(final int batchSize)
+    {
+        _queryBatchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of candidate objects above which OBJECT queries are evaluated in parallel.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @return the number of candidate objects above which queries are evaluated in parallel, zero means never.
+     */
+    public final int getParallelQueryThreshold()
+    {
+        return _parallelQueryThreshold;
+    }
+
+    /**
+     * Set the number of candidate objects above which OBJECT queries, whether from a _query_request or on behalf of
+     * a Subscription, are evaluated in parallel by a ForkJoinPool using all available processors. The order of the
+     * results is the same as for a sequential evaluation. The default is 10000 and may also be set via the
+     * "qmf.agent.query.parallel.threshold" system property.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @param threshold the number of candidate objects above which queries are evaluated in parallel, zero or less
+     *        means queries are always evaluated on the calling thread.
+     */
+    public final void setParallelQueryThreshold(final int threshold)
+    {
+        _parallelQueryThreshold = threshold;
+    }
+
     /**
      * Releases Agent's resources.
      */
     public final void destroy()
     {
+        synchronized(this)
+        {
+            _queryPoolShutdown = true;
+            if (_queryPool != null)
+            {
+                _queryPool.shutdown();
+                _queryPool = null;
+            }
+        }
+
         try
         {
             if (_connection != null)
@@ -1116,6 +1443,10 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         SchemaClassId classId = schema.getClassId();
         _schemaCache.put(classId, schema);
+        for (String name : schema.getIndexNames())
+        {
+            _propertyIndex.addIndex(name, _objectIndex.values());
+        }
     }
 
     /**
@@ -1229,11 +1560,15 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             {
                 throw new QmfException("Duplicate QmfAgentData Address");
             }
+            unindexObject(foundObject);
         }
 
         _objectIndex.put(addr, object);
+        indexObject(object);
 
         // Does the new object match any Subscriptions? If so add a reference to the matching Subscription and publish.
+        // We publish once after adding all of the references as publish() sends to every referenced Subscription.
+        boolean matched = false;
         for (Subscription subscription : _subscriptions.values())
         {
             QmfQuery query = subscription.getQuery();
@@ -1242,15 +1577,20 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 if (query.getObjectId().equals(addr))
                 {
                     object.addSubscription(subscription.getSubscriptionId(), subscription);
-                    object.publish();
+                    matched = true;
                 }
             }
             else if (query.evaluate(object))
             {
                 object.addSubscription(subscription.getSubscriptionId(), subscription);
-                object.publish();
+                matched = true;
             }
         }
+
+        if (matched)
+        {
+            object.publish();
+        }
     } // end of addObject()
 
     /**
@@ -1262,6 +1602,19 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         return _workQueue.size();
     }
 
+    /**
+     * Return the WorkQueue used by this Agent, this allows applications to retrieve the WorkQueue's dropped
+     * WorkItem count and high-water mark.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the WorkQueue used by this Agent.
+     */
+    public final WorkQueue getWorkQueue()
+    {
+        return _workQueue;
+    }
+
     /**
      * Obtains the next pending work item - blocking version.
      * <p>
@@ -1316,6 +1669,53 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         return _workQueue.getNextWorkitem(timeout);
     }
 
+    /**
+     * Retrieves up to max pending work items in a single operation - balking version.
+     * <p>
+     * This is a cheaper alternative to calling getNextWorkitem(0) for each pending work item, so applications
+     * that receive WorkItems in bursts can process them in batches e.g. the following usage pattern.
+     * <pre>
+     *   List&lt;WorkItem&gt; batch = new ArrayList&lt;WorkItem&gt;();
+     *   while (true)
+     *   {
+     *       notifier.waitForWorkItem(); // Assuming a BlockingNotifier has been used here
+     *       while (agent.drainWorkitems(batch, 100) &gt; 0)
+     *       {
+     *           for (WorkItem wi : batch)
+     *           {
+     *               System.out.println("WorkItem type: " + wi.getType());
+     *           }
+     *           batch.clear();
+     *       }
+     *   }
+     * </pre>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param items the Collection that the work items are added to.
+     * @param max the maximum number of work items to retrieve.
+     * @return the number of work items retrieved, which is zero if none are available.
+     */
+    public final int drainWorkitems(final Collection<WorkItem> items, final int max)
+    {
+        return _workQueue.drainWorkitems(items, max);
+    }
+
+    /**
+     * Retrieves up to max pending work items in a single operation, waiting up to timeout seconds for a work item
+     * to become available if none are pending.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param items the Collection that the work items are added to.
+     * @param max the maximum number of work items to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of work items retrieved, which is zero if none became available.
+     */
+    public final int drainWorkitems(final Collection<WorkItem> items, final int max, final long timeout)
+    {
+        return _workQueue.drainWorkitems(items, max, timeout);
+    }
+
     /**
      * Releases a WorkItem instance obtained by getNextWorkItem(). Called when the application has finished
      * processing the WorkItem.
@@ -1390,6 +1790,45 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      * @param qmfContentType the value to be passed to the qmf.content Header.
      */
     protected final void queryResponse(final Handle handle, List<Map> results, final String qmfContentType)
+    {
+        queryResponse(handle, results, qmfContentType, false);
+    }
+
+    /**
+     * Send a list of QmfAgentData back to the Console as the response to an OBJECT query. If the Agent has a
+     * query batch size set and there are more results than that the response is sent as a sequence of messages
+     * each holding at most batchSize objects, with all but the last flagged as "partial". Each chunk is only
+     * mapEncoded as it is sent.
+     * @param handle the reply handle that contains the replyTo Address.
+     * @param results the list of QmfAgentData query results.
+     */
+    protected final void objectQueryResponse(final Handle handle, final List<QmfAgentData> results)
+    {
+        int size = results.size();
+        int batchSize = (_queryBatchSize > 0) ? _queryBatchSize : size;
+        int start = 0;
+        do
+        {
+            int end = Math.min(start + batchSize, size);
+            List<Map> chunk = new ArrayList<Map>(end - start);
+            for (int i = start; i < end; i++)
+            {
+                chunk.add(results.get(i).mapEncode());
+            }
+            queryResponse(handle, chunk, "_data", end < size);
+            start = end;
+        } while (start < size);
+    }
+
+    /**
+     * Send a (possibly partial) query response back to the Console.
+     * @param handle the reply handle that contains the replyTo Address.
+     * @param results the list of mapEncoded query results.
+     * @param qmfContentType the value to be passed to the qmf.content Header.
+     * @param partial if true the response is flagged as "partial" to indicate that more results will follow.
+     */
+    private final void queryResponse(final Handle handle, List<Map> results, final String qmfContentType,
+                                     final boolean partial)
     {
         try
         {
@@ -1401,6 +1840,10 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             response.setStringProperty("qmf.agent", _name);
             response.setStringProperty("qmf.content", qmfContentType);
             response.setStringProperty("qpid.subject", handle.getRoutingKey());
+            if (partial)
+            {
+                response.setBooleanProperty("partial", true);
+            }
             AMQPMessage.setList(response, results);
             sendResponse(handle, response);
         }
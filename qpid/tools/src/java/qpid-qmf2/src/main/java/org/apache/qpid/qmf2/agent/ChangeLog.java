@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class records the QmfAgentData objects in an Agent's internal store that have changed, so that the Agent's
+ * SubscriptionGroups only need to look at the objects that have changed since they last published rather than
+ * re-evaluating their query against every object in the store on each interval.
+ * <p>
+ * QmfAgentData.update() (which is also called by publish() and destroy()) and QmfAgentData.setValue() record the
+ * object in the ChangeLog with a new sequence number, moving it to the end of the log if it was already present, so
+ * the log holds each changed object once in sequence order. Each registered SubscriptionGroup holds a cursor recording the last sequence number it
+ * has consumed and entries are trimmed from the head of the log once every SubscriptionGroup has consumed them.
+ */
+final class ChangeLog
+{
+    private long _sequence = 0;
+
+    /**
+     * The changed QmfAgentData objects keyed in sequence order, the value is the sequence number of the last change.
+     */
+    private final LinkedHashMap<QmfAgentData, Long> _changes = new LinkedHashMap<QmfAgentData, Long>();
+
+    /**
+     * The last sequence number consumed by each registered SubscriptionGroup.
+     */
+    private final Map<SubscriptionGroup, Long> _cursors = new HashMap<SubscriptionGroup, Long>();
+
+    /**
+     * Record that a QmfAgentData has changed. If there are no registered SubscriptionGroups there is nothing to record.
+     * @param object the QmfAgentData that has changed.
+     */
+    synchronized void changed(final QmfAgentData object)
+    {
+        if (!_cursors.isEmpty())
+        {
+            _changes.remove(object);
+            _changes.put(object, ++_sequence);
+        }
+    }
+
+    /**
+     * Remove a QmfAgentData that has been removed from the Agent's store from the log.
+     * @param object the QmfAgentData that has been removed.
+     */
+    synchronized void remove(final QmfAgentData object)
+    {
+        _changes.remove(object);
+    }
+
+    /**
+     * Register a SubscriptionGroup, which will consume changes made after this call.
+     * @param group the SubscriptionGroup being registered.
+     */
+    synchronized void register(final SubscriptionGroup group)
+    {
+        _cursors.put(group, _sequence);
+    }
+
+    /**
+     * Unregister a SubscriptionGroup, trimming any changes that no longer need to be retained.
+     * @param group the SubscriptionGroup being unregistered.
+     */
+    synchronized void unregister(final SubscriptionGroup group)
+    {
+        _cursors.remove(group);
+        trim();
+    }
+
+    /**
+     * Return the QmfAgentData objects that have changed since the SubscriptionGroup last consumed from the log.
+     * @param group the SubscriptionGroup consuming changes.
+     * @return the QmfAgentData objects that have changed since the SubscriptionGroup last consumed from the log.
+     */
+    synchronized List<QmfAgentData> consume(final SubscriptionGroup group)
+    {
+        Long cursor = _cursors.get(group);
+        if (cursor == null)
+        {
+            return new ArrayList<QmfAgentData>();
+        }
+        List<QmfAgentData> results = new ArrayList<QmfAgentData>();
+        for (Map.Entry<QmfAgentData, Long> entry : _changes.entrySet())
+        {
+            if (entry.getValue() > cursor)
+            {
+                results.add(entry.getKey());
+            }
+        }
+        _cursors.put(group, _sequence);
+        trim();
+        return results;
+    }
+
+    /**
+     * Remove the changes from the head of the log that have been consumed by every registered SubscriptionGroup.
+     */
+    private void trim()
+    {
+        long minimum = _sequence;
+        for (Long cursor : _cursors.values())
+        {
+            minimum = Math.min(minimum, cursor);
+        }
+        Iterator<Long> i = _changes.values().iterator();
+        while (i.hasNext() && i.next() <= minimum)
+        {
+            i.remove();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.BooleanEquals;
+import org.apache.qpid.qmf2.common.BooleanFalse;
+import org.apache.qpid.qmf2.common.BooleanIn;
+import org.apache.qpid.qmf2.common.Expression;
+import org.apache.qpid.qmf2.common.LogicalAnd;
+import org.apache.qpid.qmf2.common.LogicalOr;
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.QmfData;
+
+/**
+ * This class maintains the property value indexes of an Agent's internal object store.
+ * <p>
+ * The names of the indexed properties are declared via SchemaObjectClass.setIndexNames() and every QmfAgentData
+ * in the store that has a value for an indexed property is indexed by the String form of that value, which is the
+ * same form used when BooleanEquals evaluates an "eq" predicate. This allows a query whose predicate is an "eq"
+ * between an indexed property and a constant, or a LogicalAnd that contains such a term, to be evaluated against
+ * only the objects in the matching index entry. An "in" on an indexed property, or a LogicalOr whose terms can all
+ * be looked up, is evaluated against the union of the matching index entries. The objects returned by lookup() are
+ * a superset of the objects that match the query, so they must still be evaluated against it.
+ * <p>
+ * An object's index entries are refreshed when it is added to the store, whenever setValue() changes one of its
+ * indexed properties and whenever its update() method is called, so the index never misses an object that a full
+ * scan would find. Updates to the index are serialised, lookups are not.
+ */
+final class PropertyIndex
+{
+    /**
+     * The indexes keyed by property name, each holding a Map of the QmfAgentData objects keyed by property value.
+     */
+    private final Map<String, ConcurrentMap<String, ConcurrentMap<ObjectId, QmfAgentData>>> _indexes =
+        new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentMap<ObjectId, QmfAgentData>>>();
+
+    /**
+     * The property values each QmfAgentData was last indexed with, so update() can tell which entries have changed.
+     */
+    private final Map<QmfAgentData, Map<String, Object>> _indexedValues =
+        new HashMap<QmfAgentData, Map<String, Object>>();
+
+    /**
+     * Add a new indexed property name, indexing any existing objects that have a value for it.
+     * @param name the name of the property to index.
+     * @param objects the objects currently held in the Agent's store.
+     */
+    synchronized void addIndex(final String name, final Collection<QmfAgentData> objects)
+    {
+        if (_indexes.containsKey(name))
+        {
+            return;
+        }
+        _indexes.put(name, new ConcurrentHashMap<String, ConcurrentMap<ObjectId, QmfAgentData>>());
+        for (QmfAgentData object : objects)
+        {
+            Map<String, Object> values = _indexedValues.get(object);
+            if (values != null)
+            {
+                indexValue(object, values, name);
+            }
+        }
+    }
+
+    /**
+     * Add a QmfAgentData to the index.
+     * @param object the QmfAgentData being added to the Agent's store.
+     */
+    synchronized void add(final QmfAgentData object)
+    {
+        Map<String, Object> values = new HashMap<String, Object>();
+        _indexedValues.put(object, values);
+        for (String name : _indexes.keySet())
+        {
+            indexValue(object, values, name);
+        }
+        object.setPropertyIndex(this);
+    }
+
+    /**
+     * Remove a QmfAgentData from the index.
+     * @param object the QmfAgentData being removed from the Agent's store.
+     */
+    synchronized void remove(final QmfAgentData object)
+    {
+        object.setPropertyIndex(null);
+        Map<String, Object> values = _indexedValues.remove(object);
+        if (values != null)
+        {
+            for (Map.Entry<String, Object> entry : values.entrySet())
+            {
+                removeEntry(object, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Refresh the index entries of a QmfAgentData whose indexed property values may have changed.
+     * @param object the QmfAgentData that has been updated.
+     */
+    synchronized void update(final QmfAgentData object)
+    {
+        Map<String, Object> values = _indexedValues.get(object);
+        if (values == null)
+        {
+            return;
+        }
+        for (String name : _indexes.keySet())
+        {
+            reindex(object, values, name);
+        }
+    }
+
+    /**
+     * Refresh the index entry of a QmfAgentData for a single property whose value has been changed by setValue().
+     * @param object the QmfAgentData that has been changed.
+     * @param name the name of the property that has changed.
+     */
+    void update(final QmfAgentData object, final String name)
+    {
+        if (!_indexes.containsKey(name))
+        { // The common case, most properties aren't indexed so avoid taking the lock.
+            return;
+        }
+
+        synchronized (this)
+        {
+            Map<String, Object> values = _indexedValues.get(object);
+            if (values != null)
+            {
+                reindex(object, values, name);
+            }
+        }
+    }
+
+    /**
+     * Move a QmfAgentData to the index entry for the current value of the named property if the value has changed
+     * since it was indexed.
+     * @param object the QmfAgentData being reindexed.
+     * @param values the property values the QmfAgentData has been indexed with.
+     * @param name the name of the indexed property.
+     */
+    private void reindex(final QmfAgentData object, final Map<String, Object> values, final String name)
+    {
+        Object oldValue = values.get(name);
+        Object newValue = object.getValue(name);
+        if (oldValue == null ? newValue != null : !oldValue.equals(newValue))
+        {
+            if (values.containsKey(name))
+            {
+                removeEntry(object, name, values.remove(name));
+            }
+            indexValue(object, values, name);
+        }
+    }
+
+    /**
+     * Return the QmfAgentData objects that may match the specified Expression if the index can be used to evaluate
+     * it. The index can be used if the Expression is an "eq" between an indexed property and a constant, or if it
+     * is an "and" containing at least one such term, in which case the smallest matching index entry is returned.
+     * @param expression the Expression created from the query predicate.
+     * @return the QmfAgentData objects that may match the Expression, or null if the index cannot be used.
+     */
+    Collection<QmfAgentData> lookup(final Expression expression)
+    {
+        if (_indexes.isEmpty())
+        {
+            return null;
+        }
+        if (expression instanceof BooleanEquals)
+        {
+            BooleanEquals equals = (BooleanEquals)expression;
+            for (int i = 0; i < 2; i++)
+            {
+                String name = equals.getKey(i);
+                String value = equals.getConstant(1 - i);
+                Map<String, ConcurrentMap<ObjectId, QmfAgentData>> index = (name == null) ? null : _indexes.get(name);
+                if (index != null && value != null)
+                {
+                    Map<ObjectId, QmfAgentData> entry = index.get(value);
+                    return (entry == null) ? Collections.<QmfAgentData>emptyList() : entry.values();
+                }
+            }
+        }
+        else if (expression instanceof BooleanIn)
+        {
+            BooleanIn in = (BooleanIn)expression;
+            Map<String, ConcurrentMap<ObjectId, QmfAgentData>> index = _indexes.get(in.getKey(0));
+            if (index != null)
+            {
+                Set<QmfAgentData> union = new LinkedHashSet<QmfAgentData>();
+                for (String value : in.getValues())
+                {
+                    Map<ObjectId, QmfAgentData> entry = index.get(value);
+                    if (entry != null)
+                    {
+                        union.addAll(entry.values());
+                    }
+                }
+                return union;
+            }
+        }
+        else if (expression instanceof LogicalAnd)
+        {
+            Collection<QmfAgentData> smallest = null;
+            for (Expression subExpression : ((LogicalAnd)expression).getSubExpressions())
+            {
+                Collection<QmfAgentData> candidates = lookup(subExpression);
+                if (candidates != null && (smallest == null || candidates.size() < smallest.size()))
+                {
+                    smallest = candidates;
+                }
+            }
+            return smallest;
+        }
+        else if (expression instanceof LogicalOr)
+        {
+            Set<QmfAgentData> union = new LinkedHashSet<QmfAgentData>();
+            for (Expression subExpression : ((LogicalOr)expression).getSubExpressions())
+            {
+                Collection<QmfAgentData> candidates = lookup(subExpression);
+                if (candidates == null)
+                { // If any term can't be looked up the whole store needs to be evaluated.
+                    return null;
+                }
+                union.addAll(candidates);
+            }
+            return union;
+        }
+        else if (expression instanceof BooleanFalse)
+        {
+            return Collections.emptyList();
+        }
+        return null;
+    }
+
+    /**
+     * Index a QmfAgentData by the value of the named property if it has one, recording the value indexed.
+     * @param object the QmfAgentData being indexed.
+     * @param values the property values the QmfAgentData has been indexed with.
+     * @param name the name of the indexed property.
+     */
+    private void indexValue(final QmfAgentData object, final Map<String, Object> values, final String name)
+    {
+        if (object.hasValue(name))
+        {
+            Object value = object.getValue(name);
+            values.put(name, value);
+            ConcurrentMap<String, ConcurrentMap<ObjectId, QmfAgentData>> index = _indexes.get(name);
+            String key = QmfData.getString(value);
+            ConcurrentMap<ObjectId, QmfAgentData> entry = index.get(key);
+            if (entry == null)
+            {
+                entry = new ConcurrentHashMap<ObjectId, QmfAgentData>();
+                index.put(key, entry);
+            }
+            entry.put(object.getObjectId(), object);
+        }
+    }
+
+    /**
+     * Remove a QmfAgentData from the index entry for the specified property value, removing the entry if it is empty.
+     * @param object the QmfAgentData being removed.
+     * @param name the name of the indexed property.
+     * @param value the property value the QmfAgentData was indexed with.
+     */
+    private void removeEntry(final QmfAgentData object, final String name, final Object value)
+    {
+        ConcurrentMap<String, ConcurrentMap<ObjectId, QmfAgentData>> index = _indexes.get(name);
+        String key = QmfData.getString(value);
+        ConcurrentMap<ObjectId, QmfAgentData> entry = index.get(key);
+        if (entry != null)
+        {
+            entry.remove(object.getObjectId(), object);
+            if (entry.isEmpty())
+            {
+                index.remove(key);
+            }
+        }
+    }
+}
@@ -23,12 +23,12 @@ package org.apache.qpid.qmf2.agent;
 // Misc Imports
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 // QMF2 Imports
+import org.apache.qpid.qmf2.common.EncodedMap;
 import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfException;
 import org.apache.qpid.qmf2.common.QmfManaged;
@@ -79,6 +79,36 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      */
     private Map<String, Subscription> _subscriptions = new ConcurrentHashMap<String, Subscription>();
 
+    /**
+     * The property value index of the Agent store holding this object, if any. This is refreshed by update().
+     */
+    private volatile PropertyIndex _propertyIndex = null;
+
+    /**
+     * The ChangeLog of the Agent store holding this object, if any. Changes are recorded by update() and setValue().
+     */
+    private volatile ChangeLog _changeLog = null;
+
+    /**
+     * The cached mapEncoded form of this object, which is valid until update() or a mutator changes its state.
+     */
+    private volatile CachedEncoding _cachedEncoding = null;
+
+    /**
+     * Holds a cached mapEncoded form together with the QmfData version it was encoded from.
+     */
+    private static final class CachedEncoding
+    {
+        private final long _version;
+        private final EncodedMap _map;
+
+        CachedEncoding(final long version, final EncodedMap map)
+        {
+            _version = version;
+            _map = map;
+        }
+    }
+
     /**
      * Construct a QmfAgentData object of the type described by the given SchemaObjectClass.
      *
@@ -245,6 +275,57 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
     public final void update()
     {
         _updateTimestamp = System.currentTimeMillis()*1000000l;
+        incrementVersion();
+        PropertyIndex propertyIndex = _propertyIndex;
+        if (propertyIndex != null)
+        {
+            propertyIndex.update(this);
+        }
+        ChangeLog changeLog = _changeLog;
+        if (changeLog != null)
+        {
+            changeLog.changed(this);
+        }
+    }
+
+    /**
+     * Set the property value index of the Agent store holding this object. Called by the PropertyIndex itself
+     * as this object is added to or removed from the index.
+     * @param propertyIndex the PropertyIndex holding this object or null if it has been removed.
+     */
+    final void setPropertyIndex(final PropertyIndex propertyIndex)
+    {
+        _propertyIndex = propertyIndex;
+    }
+
+    /**
+     * Keep the property value index of the Agent store holding this object up to date when an indexed property is
+     * changed by setValue(), so that indexed queries see the change even if update() hasn't been called yet, and
+     * record the change in the ChangeLog so that Subscriptions whose query the object now matches will publish it.
+     * @param name the name of the property that has changed.
+     */
+    @Override
+    protected final void valueChanged(final String name)
+    {
+        PropertyIndex propertyIndex = _propertyIndex;
+        if (propertyIndex != null)
+        {
+            propertyIndex.update(this, name);
+        }
+        ChangeLog changeLog = _changeLog;
+        if (changeLog != null)
+        {
+            changeLog.changed(this);
+        }
+    }
+
+    /**
+     * Set the ChangeLog of the Agent store holding this object.
+     * @param changeLog the ChangeLog recording changes to this object or null if it has been removed from the store.
+     */
+    final void setChangeLog(final ChangeLog changeLog)
+    {
+        _changeLog = changeLog;
     }
 
     /**
@@ -285,13 +366,25 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      * setting the underlying Map properties via setValue() etc. when the object needs to be "serialised". This would
      * most obviously be done by extending the mapEncode() method (noting that it's important to call QmfAgentData's
      * mapEncode() first via super.mapEncode(); as this will set the state of the underlying QmfData).
+     * <p>
+     * The encoded form is cached until the object's state is next changed by update() (which is also called by
+     * publish() and destroy()) or by a mutator such as setValue() or incValue(), so unchanged objects are only
+     * encoded, and serialised by AMQPMessage.setList(), once. Setting a property to its existing value doesn't
+     * invalidate the cache. The returned Map must therefore not be modified.
      *
      * @return the underlying map. 
      */
     @Override
     public Map<String, Object> mapEncode()
     {
-        Map<String, Object> map = new HashMap<String, Object>();
+        long version = getVersion();
+        CachedEncoding cached = _cachedEncoding;
+        if (cached != null && cached._version == version)
+        {
+            return cached._map;
+        }
+
+        EncodedMap map = new EncodedMap();
         map.put("_values", super.mapEncode());
         if (_subtypes != null)
         {
@@ -302,6 +395,7 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
         map.put("_update_ts", _updateTimestamp);
         map.put("_create_ts", _createTimestamp);
         map.put("_delete_ts", _deleteTimestamp);
+        _cachedEncoding = new CachedEncoding(version, map);
         return map;
     }
 
@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfQuery;
+
+/**
+ * A ForkJoin task used by the Agent to evaluate a QmfQuery over a large number of QmfAgentData objects in parallel.
+ * <p>
+ * The candidate objects are split in half recursively until each range is no larger than the leaf size, each leaf
+ * range is then evaluated sequentially. The results of the two halves are concatenated left then right, so the
+ * returned List holds the matching objects in the same order that a sequential evaluation of the candidates would.
+ * <p>
+ * As with a sequential evaluation objects marked as deleted are not included in the results. This relies on
+ * QmfQuery.evaluate() being safe to call from several threads at once.
+ */
+final class QueryTask extends RecursiveTask<List<QmfAgentData>>
+{
+    private static final long serialVersionUID = 1L;
+
+    private final QmfQuery _query;
+    private final QmfAgentData[] _objects;
+    private final int _from;
+    private final int _to;
+    private final int _leafSize;
+
+    /**
+     * Construct a QueryTask to evaluate a QmfQuery over a range of candidate objects.
+     *
+     * @param query the QmfQuery being evaluated.
+     * @param objects the candidate QmfAgentData objects.
+     * @param from the index of the first candidate in the range (inclusive).
+     * @param to the index of the last candidate in the range (exclusive).
+     * @param leafSize the size of range below which candidates are evaluated sequentially.
+     */
+    QueryTask(final QmfQuery query, final QmfAgentData[] objects, final int from, final int to, final int leafSize)
+    {
+        _query = query;
+        _objects = objects;
+        _from = from;
+        _to = to;
+        _leafSize = leafSize;
+    }
+
+    /**
+     * Evaluate the QmfQuery over the range of candidates, forking subtasks if the range is larger than the leaf size.
+     * @return the candidates in the range that match the QmfQuery and aren't deleted, in candidate order.
+     */
+    @Override
+    protected List<QmfAgentData> compute()
+    {
+        if (_to - _from <= _leafSize)
+        {
+            List<QmfAgentData> results = new ArrayList<QmfAgentData>();
+            for (int i = _from; i < _to; i++)
+            {
+                QmfAgentData object = _objects[i];
+                if (!object.isDeleted() && _query.evaluate(object))
+                {
+                    results.add(object);
+                }
+            }
+            return results;
+        }
+
+        int middle = (_from + _to) >>> 1;
+        QueryTask left = new QueryTask(_query, _objects, _from, middle, _leafSize);
+        QueryTask right = new QueryTask(_query, _objects, middle, _to, _leafSize);
+        left.fork();
+        List<QmfAgentData> rightResults = right.compute();
+        List<QmfAgentData> leftResults = left.join();
+
+        List<QmfAgentData> results = new ArrayList<QmfAgentData>(leftResults.size() + rightResults.size());
+        results.addAll(leftResults);
+        results.addAll(rightResults);
+        return results;
+    }
+}
@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimerTask;
@@ -106,46 +107,91 @@ public final class Subscription extends TimerTask
      * <p>
      * If the Subscription isn't cancelled the Query gets evaluated against all registered objects and any that match
      * which are new to the Subscription or have changed since the last update get published.
+     * <p>
+     * Note that Subscriptions created by the Agent for its internal store aren't scheduled themselves, rather they
+     * are members of a SubscriptionGroup that evaluates the Query on behalf of all of its members.
      */
     public void run()
     {
-        long elapsed = (long)Math.round((System.currentTimeMillis() - _startTime)/1000.0f);
-        if (elapsed >= _duration)
+        if (isExpired())
         {
-            _log.debug("Subscription {} has expired, removing", _subscriptionId);
             // The Subscription has expired so cancel it
             cancel();
         }
         else
         {
-            List<QmfAgentData> objects = _agent.evaluateQuery(_query);
-            List<Map> results = new ArrayList<Map>(objects.size());
-            for (QmfAgentData object : objects)
+            publish(_agent.evaluateQuery(_query), new HashMap<QmfAgentData, Map>());
+        }
+    }
+
+    /**
+     * Return true if the Subscription has expired.
+     * @return true if the Subscription has expired.
+     */
+    boolean isExpired()
+    {
+        long elapsed = (long)Math.round((System.currentTimeMillis() - _startTime)/1000.0f);
+        if (elapsed >= _duration)
+        {
+            _log.debug("Subscription {} has expired, removing", _subscriptionId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Publish those of the specified objects that are new to the Subscription or have changed since the last update.
+     *
+     * @param objects QmfAgentData objects that match the query associated with this Subscription.
+     * @param encodings a cache of the mapEncoded form of the objects, this allows a SubscriptionGroup to share the
+     * encoded objects between the Subscriptions that are members of the group.
+     */
+    void publish(final List<QmfAgentData> objects, final Map<QmfAgentData, Map> encodings)
+    {
+        List<Map> results = new ArrayList<Map>(objects.size());
+        for (QmfAgentData object : objects)
+        {
+            if (object.getSubscription(_subscriptionId) == null)
             {
-                if (object.getSubscription(_subscriptionId) == null)
-                {
-                    // The object is new to this Subscription so publish it
-                    object.addSubscription(_subscriptionId, this);
-                    results.add(object.mapEncode());
-                }
-                else
+                // The object is new to this Subscription so publish it
+                object.addSubscription(_subscriptionId, this);
+                results.add(getEncoding(object, encodings));
+            }
+            else
+            {
+                // If the object has had update() called since last Subscription update publish it.
+                // Note that in many cases an Agent might call publish() on a managed object rather than
+                // update() which immediately forces a data indication to be sent to the subscriber on
+                // the Console.
+                if (object.getUpdateTime() > _lastUpdate)
                 {
-                    // If the object has had update() called since last Subscription update publish it.
-                    // Note that in many cases an Agent might call publish() on a managed object rather than
-                    // update() which immediately forces a data indication to be sent to the subscriber on
-                    // the Console.
-                    if (object.getUpdateTime() > _lastUpdate)
-                    {
-                        results.add(object.mapEncode());
-                    }
+                    results.add(getEncoding(object, encodings));
                 }
             }
+        }
 
-            if (results.size() > 0)
-            {
-                publish(results);
-            }
+        if (results.size() > 0)
+        {
+            publish(results);
+        }
+    }
+
+    /**
+     * Return the mapEncoded form of a QmfAgentData, encoding it only if it's not already in the cache.
+     *
+     * @param object the QmfAgentData to encode.
+     * @param encodings the cache of the mapEncoded form of QmfAgentData objects.
+     * @return the mapEncoded form of the QmfAgentData.
+     */
+    private static Map getEncoding(final QmfAgentData object, final Map<QmfAgentData, Map> encodings)
+    {
+        Map encoding = encodings.get(object);
+        if (encoding == null)
+        {
+            encoding = object.mapEncode();
+            encodings.put(object, encoding);
         }
+        return encoding;
     }
 
     /**
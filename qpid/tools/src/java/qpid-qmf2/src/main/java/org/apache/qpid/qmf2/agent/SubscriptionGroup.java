@@ -0,0 +1,229 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimerTask;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+
+/**
+ * This TimerTask evaluates a QmfQuery on behalf of a group of Subscriptions that share the same query and publish
+ * interval, for example the many Consoles that typically subscribe to all of the queue objects on a broker.
+ * <p>
+ * Each interval the group evaluates its query once against the objects recorded in the Agent's ChangeLog since the
+ * last interval, mapEncodes each matching object at most once and then passes the same encoded objects to every
+ * member, which publishes those that are new to it or have been updated since its last update to its Console.
+ * <p>
+ * Newly added members need the full set of matching objects, so they are held as pending members until the group
+ * is initialised, which evaluates the query against the whole store once on behalf of all pending members.
+ */
+final class SubscriptionGroup extends TimerTask
+{
+    private final SubscribableAgent _agent;
+    private final QmfQuery _query;
+    private final ChangeLog _changeLog;
+    private final List<Subscription> _members = new ArrayList<Subscription>();
+    private final List<Subscription> _pending = new ArrayList<Subscription>();
+
+    /**
+     * Create the key used to look up the SubscriptionGroup that a Subscription belongs to. Subscriptions whose
+     * queries have the same encoded form and which have the same publish interval belong to the same group.
+     * @param subscription the Subscription to create the key for.
+     * @return the key of the SubscriptionGroup that the Subscription belongs to.
+     */
+    static List<Object> createKey(final Subscription subscription)
+    {
+        return Arrays.<Object>asList(subscription.getQuery().mapEncode(), subscription.getInterval());
+    }
+
+    /**
+     * Construct a SubscriptionGroup.
+     * @param agent the SubscribableAgent whose data is being subscribed to.
+     * @param query the QmfQuery shared by the members of this group.
+     * @param changeLog the ChangeLog recording changes to the Agent's QmfAgentData objects.
+     */
+    SubscriptionGroup(final SubscribableAgent agent, final QmfQuery query, final ChangeLog changeLog)
+    {
+        _agent = agent;
+        _query = query;
+        _changeLog = changeLog;
+        _changeLog.register(this);
+    }
+
+    /**
+     * Add a new Subscription to the group. The new member will receive its initial results when the group is next
+     * initialised or run.
+     * @param subscription the Subscription being added.
+     */
+    synchronized void add(final Subscription subscription)
+    {
+        _pending.add(subscription);
+    }
+
+    /**
+     * Remove a Subscription from the group.
+     * @param subscription the Subscription being removed.
+     * @return true if the group is now empty.
+     */
+    synchronized boolean remove(final Subscription subscription)
+    {
+        _members.remove(subscription);
+        _pending.remove(subscription);
+        return _members.isEmpty() && _pending.isEmpty();
+    }
+
+    /**
+     * Publish the full set of matching objects to any pending members, evaluating the query against the whole store
+     * once on behalf of all of them.
+     */
+    void initialise()
+    {
+        List<Subscription> expired = new ArrayList<Subscription>();
+        synchronized(this)
+        {
+            initialise(expired);
+        }
+        cancel(expired);
+    }
+
+    /**
+     * This method gets called periodically by the Timer scheduling this TimerTask.
+     * <p>
+     * Expired members are cancelled, then the query is evaluated against the objects that have changed since the last
+     * interval and the results are passed to each member to publish.
+     */
+    public void run()
+    {
+        List<Subscription> expired = new ArrayList<Subscription>();
+        synchronized(this)
+        {
+            initialise(expired);
+            List<Subscription> members = new ArrayList<Subscription>(_members.size());
+            for (Subscription member : _members)
+            {
+                if (member.isExpired())
+                {
+                    expired.add(member);
+                }
+                else
+                {
+                    members.add(member);
+                }
+            }
+
+            List<QmfAgentData> changed = _changeLog.consume(this);
+            if (members.size() > 0 && changed.size() > 0)
+            {
+                List<QmfAgentData> objects = new ArrayList<QmfAgentData>(changed.size());
+                for (QmfAgentData object : changed)
+                {
+                    if (!object.isDeleted() && matches(object))
+                    {
+                        objects.add(object);
+                    }
+                }
+
+                Map<QmfAgentData, Map> encodings = new HashMap<QmfAgentData, Map>(objects.size());
+                for (Subscription member : members)
+                {
+                    member.publish(objects, encodings);
+                }
+            }
+        }
+        cancel(expired);
+    }
+
+    /**
+     * Cancel the group's TimerTask and stop recording changes on its behalf.
+     */
+    @Override
+    public boolean cancel()
+    {
+        _changeLog.unregister(this);
+        return super.cancel(); // Cancel the TimerTask
+    }
+
+    /**
+     * Publish the full set of matching objects to any pending members and make them full members of the group.
+     * Must be called holding the group's lock.
+     * @param expired a List to which any expired pending members are added.
+     */
+    private void initialise(final List<Subscription> expired)
+    {
+        if (_pending.size() > 0)
+        {
+            List<QmfAgentData> objects = _agent.evaluateQuery(_query);
+            Map<QmfAgentData, Map> encodings = new HashMap<QmfAgentData, Map>(objects.size());
+            for (Subscription subscription : _pending)
+            {
+                if (subscription.isExpired())
+                {
+                    expired.add(subscription);
+                }
+                else
+                {
+                    subscription.publish(objects, encodings);
+                    _members.add(subscription);
+                }
+            }
+            _pending.clear();
+        }
+    }
+
+    /**
+     * Cancel expired members. This is done without holding the group's lock as cancelling a Subscription calls back
+     * into the Agent, which removes it from the group.
+     * @param expired the expired Subscriptions.
+     */
+    private void cancel(final List<Subscription> expired)
+    {
+        for (Subscription subscription : expired)
+        {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Evaluate the group's query against a single QmfAgentData.
+     * @param object the QmfAgentData to evaluate the query against.
+     * @return true if the QmfAgentData matches the query.
+     */
+    private boolean matches(final QmfAgentData object)
+    {
+        if (_query.getTarget() != QmfQueryTarget.OBJECT)
+        {
+            return false;
+        }
+        if (_query.getObjectId() != null)
+        {
+            return _query.getObjectId().equals(object.getObjectId());
+        }
+        return _query.evaluate(object);
+    }
+}
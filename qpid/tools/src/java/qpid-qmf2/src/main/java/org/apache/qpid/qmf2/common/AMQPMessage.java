@@ -59,6 +59,33 @@ import org.apache.qpid.qmf2.common.QmfData;
  */
 public final class AMQPMessage
 {
+    /**
+     * The AMQP 0-10 type code for a map, written before each pre-encoded map element of an encoded list.
+     */
+    private static final byte MAP_TYPE_CODE = (byte)0xa8;
+
+    /**
+     * The minimum initial capacity of a new BBEncoder.
+     */
+    private static final int MIN_ENCODER_CAPACITY = 1024;
+
+    /**
+     * BBEncoders whose buffer has grown beyond this capacity aren't returned to the pool, so that a thread that
+     * occasionally sends a very large message doesn't hold on to a very large buffer.
+     */
+    private static final int MAX_POOLED_ENCODER_CAPACITY = 1024*1024;
+
+    /**
+     * Each thread that encodes messages keeps a BBEncoder for reuse, which avoids allocating a new buffer and
+     * growing it in several resize steps for every message that thread sends.
+     */
+    private static final ThreadLocal<BBEncoder> _encoders = new ThreadLocal<BBEncoder>();
+
+    /**
+     * A running estimate of the encoded size of a List element, used to size new BBEncoders.
+     */
+    private static volatile int _averageElementSize = 256;
+
     /**
      * Make constructor private at this class provides a set of static helper methods and doesn't need instantiated.
      */
@@ -205,8 +232,27 @@ public final class AMQPMessage
      * @param message amqp/list encoded JMS Message
      * @return a java.util.List decoded from Message
      */
-    @SuppressWarnings("unchecked")
     public static <T> List<T> getList(final Message message) throws JMSException
+    {
+        return getList(message, false);
+    }
+
+    /**
+     * JMS QMF returns amqp/list types as a BytesMessage this method decodes that into a java.util.List
+     * <p>
+     * If lazy is true and every element of an amqp/list encoded BytesMessage is a Map, each element is returned as
+     * a read-mostly view over the Message data that only decodes a property when it is first retrieved. Nested Maps
+     * are decoded lazily in the same way. This avoids decoding every property of every object in a large response
+     * when the caller only looks at a few of them. Otherwise this method behaves exactly like getList(message).
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param message amqp/list encoded JMS Message
+     * @param lazy if true decode Map elements lazily.
+     * @return a java.util.List decoded from Message
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> getList(final Message message, final boolean lazy) throws JMSException
     {
         if (message == null)
         {
@@ -219,6 +265,14 @@ public final class AMQPMessage
             //only handles responses up to 2^31-1 bytes long
             byte[] data = new byte[(int) msg.getBodyLength()];
             msg.readBytes(data);
+            if (lazy)
+            {
+                List<T> lazyList = (List<T>)getLazyList(data);
+                if (lazyList != null)
+                {
+                    return lazyList;
+                }
+            }
             BBDecoder decoder = new BBDecoder();
             decoder.init(ByteBuffer.wrap(data));
             return (List<T>)decoder.readList();
@@ -248,6 +302,45 @@ public final class AMQPMessage
         }
     }
 
+    /**
+     * Creates a List of LazyMap views over an amqp/list encoding whose elements are all Maps.
+     *
+     * @param data the amqp/list encoding.
+     * @return a List of LazyMap, or null if the encoding has any element that isn't a Map or can't be scanned.
+     */
+    private static List<Map> getLazyList(final byte[] data)
+    {
+        if (data.length < 8)
+        {
+            return null;
+        }
+
+        int count = (int)LazyMap.getUint32(data, 4);
+        if (count < 0 || count > (data.length - 8))
+        {
+            return null;
+        }
+
+        List<Map> list = new ArrayList<Map>(count);
+        int position = 8;
+        for (int i = 0; i < count; i++)
+        {
+            if (position >= data.length || data[position] != MAP_TYPE_CODE || position + 5 > data.length)
+            {
+                return null;
+            }
+            position++;
+            int width = 4 + (int)LazyMap.getUint32(data, position);
+            if (width < 4 || position + width > data.length)
+            {
+                return null;
+            }
+            list.add(new LazyMap(data, position, width));
+            position += width;
+        }
+        return list;
+    }
+
     /**
      * Creates an amqp/list encoded Message out of a BytesMessage.
      * <p>
@@ -271,7 +364,10 @@ public final class AMQPMessage
      * This is somewhat of a dirty hack that needs to be monitored as qpid versions change.
      * <p>
      * This method uses the org.apache.qpid.transport.codec.BBEncoder writeList() method to encode
-     * a List into a ByteBuffer then writes the bytes from the buffer into a JMS BytesMessage.
+     * a List into a ByteBuffer then writes the bytes from the buffer into a JMS BytesMessage. The BBEncoder is
+     * reused by the calling thread and the bytes are written directly from its buffer.
+     * <p>
+     * If every element of the List is an EncodedMap the List is written using the cached encoding of each element.
      *
      * @param message amqp/list encoded JMS BytesMessage
      * @param list to encode into JMS Message
@@ -289,20 +385,125 @@ public final class AMQPMessage
         {
             throw new MessageFormatException("Attempting to do AMQPMessage.setList() on null Message");
         }
+        else if (message instanceof BytesMessage && isEncodedList(list))
+        {
+            writeEncodedList((BytesMessage)message, list);
+        }
         else if (message instanceof BytesMessage)
         {
-            BBEncoder encoder = new BBEncoder(1024);
+            BBEncoder encoder = acquireEncoder(list.size()*_averageElementSize);
             encoder.writeList(list);
             ByteBuffer buf = encoder.segment();
-            byte[] data = new byte[buf.limit()];
-            buf.get(data);
-            ((BytesMessage)message).writeBytes(data);
+            int size = buf.remaining();
+            if (buf.hasArray())
+            {
+                ((BytesMessage)message).writeBytes(buf.array(), buf.arrayOffset() + buf.position(), size);
+            }
+            else
+            {
+                byte[] data = new byte[size];
+                buf.get(data);
+                ((BytesMessage)message).writeBytes(data);
+            }
+            releaseEncoder(encoder, buf);
+
+            if (list.size() > 0)
+            {
+                _averageElementSize = (3*_averageElementSize + size/list.size())/4;
+            }
         }
         else
         {
             throw new MessageFormatException("Attempting to do setList() on " + message.getClass().getCanonicalName());
         }
     }
+
+    /**
+     * Return the calling thread's pooled BBEncoder ready for use, or a new BBEncoder if the thread doesn't have one.
+     * The BBEncoder should be returned via releaseEncoder() once its encoded data has been consumed.
+     *
+     * @param estimatedSize the estimated size of the data to be encoded, used to size a new BBEncoder.
+     * @return a BBEncoder ready for use.
+     */
+    static BBEncoder acquireEncoder(final int estimatedSize)
+    {
+        BBEncoder encoder = _encoders.get();
+        if (encoder == null)
+        {
+            encoder = new BBEncoder(Math.max(MIN_ENCODER_CAPACITY, estimatedSize));
+        }
+        else
+        { // Remove the BBEncoder from the pool while in use in case of reentrant calls.
+            _encoders.set(null);
+            encoder.init();
+        }
+        return encoder;
+    }
+
+    /**
+     * Return a BBEncoder obtained from acquireEncoder() to the calling thread's pool, unless it has grown too large.
+     *
+     * @param encoder the BBEncoder being released.
+     * @param buf a ByteBuffer obtained from the BBEncoder, used to find the BBEncoder's current capacity.
+     */
+    static void releaseEncoder(final BBEncoder encoder, final ByteBuffer buf)
+    {
+        int capacity = buf.hasArray() ? buf.array().length : buf.capacity();
+        if (capacity <= MAX_POOLED_ENCODER_CAPACITY)
+        {
+            _encoders.set(encoder);
+        }
+    }
+
+    /**
+     * Returns true if the List is non-empty and every element is an EncodedMap.
+     *
+     * @param list the List to check.
+     * @return true if the List is non-empty and every element is an EncodedMap.
+     */
+    private static boolean isEncodedList(final List list)
+    {
+        if (list.size() == 0)
+        {
+            return false;
+        }
+        for (Object element : list)
+        {
+            if (!(element instanceof EncodedMap))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a List of EncodedMap to a BytesMessage using the cached encoding of each element. The List is written
+     * exactly as BBEncoder writeList() would write it: a 32 bit size, a 32 bit element count then the type code and
+     * encoding of each element.
+     *
+     * @param message amqp/list encoded JMS BytesMessage
+     * @param list a List of EncodedMap to encode into the JMS Message
+     */
+    private static void writeEncodedList(final BytesMessage message, final List list) throws JMSException
+    {
+        int count = list.size();
+        byte[][] elements = new byte[count][];
+        int size = 4; // The element count
+        for (int i = 0; i < count; i++)
+        {
+            elements[i] = ((EncodedMap)list.get(i)).getEncoded();
+            size += 1 + elements[i].length;
+        }
+
+        message.writeInt(size);
+        message.writeInt(count);
+        for (byte[] element : elements)
+        {
+            message.writeByte(MAP_TYPE_CODE);
+            message.writeBytes(element);
+        }
+    }
 }
 
 
@@ -31,7 +31,11 @@ package org.apache.qpid.qmf2.common;
  */
 public final class BlockingNotifier implements Notifier
 {
-    private boolean _waiting = true;
+    /**
+     * True until indication() has been called, reset when waitForWorkItem() returns. This is volatile so that
+     * indication() can skip taking the lock while an earlier indication is still pending.
+     */
+    private volatile boolean _waiting = true;
 
     /**
      * This method blocks until the indication() method has been called, this is generally called by the Console
@@ -55,11 +59,24 @@ public final class BlockingNotifier implements Notifier
 
     /**
      * Called to indicate the availability of WorkItems. This method unblocks waitForWorkItem()
+     * <p>
+     * Indications made while an earlier one is still pending (i.e. before the client has returned from
+     * waitForWorkItem() to drain the WorkQueue) are coalesced, as the client will retrieve all of the available
+     * WorkItems anyway, so when WorkItems arrive in a burst we only wake the client once.
      */
-    public synchronized void indication()
+    public void indication()
     {
-        _waiting = false;
-        notifyAll();
+        if (_waiting)
+        {
+            synchronized (this)
+            {
+                if (_waiting)
+                {
+                    _waiting = false;
+                    notifyAll();
+                }
+            }
+        }
     }
 }
 
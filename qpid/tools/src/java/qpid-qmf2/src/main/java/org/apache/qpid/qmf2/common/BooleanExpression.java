@@ -29,14 +29,26 @@ import java.util.Map;
 
 /**
  * This class represents the base class for all Boolean Expressions created by expanding the Query predicate.
+ * <p>
+ * Constant operands are parsed when the Expression is created, so integer and floating point constants are held
+ * as a Long or Double. Operands looked up from the QmfData object at evaluation time are used as the property's
+ * native type, so numeric comparisons compare longs or doubles directly and don't convert the property to a String.
+ * Where the operand types don't allow a native comparison the Expression falls back to comparing String values.
+ * <p>
+ * BooleanExpressions are immutable once created. Operands obtained at evaluation time are held on the stack of the
+ * evaluating thread, so the same Expression, and hence the same QmfQuery, may be evaluated by several threads at once.
  *
  * @author Fraser Adams
  */
 public abstract class BooleanExpression extends Expression
 {
     private static Map<String, BooleanExpression> _factories = new HashMap<String, BooleanExpression>();
-    protected String[] _operands;
-    private String[] _keys;
+    private static final String[] NO_STRINGS = new String[0];
+    private static final Number[] NO_NUMBERS = new Number[0];
+
+    private final String[] _keys;
+    private final String[] _constants;
+    private final Number[] _numbers;
 
     /**
      * Initialise the _factories Map, which contains the prototype instances of each concrete BooleanExpression
@@ -52,6 +64,7 @@ public abstract class BooleanExpression extends Expression
         _factories.put("ge", new BooleanGreaterEqual());
         _factories.put("re_match", new BooleanRegexMatch());
         _factories.put("exists", new BooleanExists());
+        _factories.put("in", new BooleanIn());
         _factories.put("true", new BooleanTrue());
         _factories.put("false", new BooleanFalse());
     }
@@ -93,6 +106,9 @@ public abstract class BooleanExpression extends Expression
      */
     protected BooleanExpression()
     {
+        _keys = NO_STRINGS;
+        _constants = NO_STRINGS;
+        _numbers = NO_NUMBERS;
     }
 
     /**
@@ -110,8 +126,9 @@ public abstract class BooleanExpression extends Expression
         Iterator iter = expr.listIterator();
         String op = (String)iter.next(); // We've already tested for hasNext() in the factory
 
-        _operands = new String[operandCount];
         _keys = new String[operandCount];
+        _constants = new String[operandCount];
+        _numbers = new Number[operandCount];
 
         for (int i = 0; i < operandCount; i++)
         {
@@ -121,12 +138,12 @@ public abstract class BooleanExpression extends Expression
             }
 
             Object object = iter.next();
-            _operands[i] = object.toString();
+            _constants[i] = object.toString();
 
             if (object instanceof String)
             {
-                _keys[i] = _operands[i];
-                _operands[i] = null;
+                _keys[i] = _constants[i];
+                _constants[i] = null;
             }
             else if (object instanceof List)
             {
@@ -137,7 +154,7 @@ public abstract class BooleanExpression extends Expression
                 {
                     if (subiter.hasNext())
                     {
-                        _operands[i] = subiter.next().toString();
+                        _constants[i] = subiter.next().toString();
                         if (subiter.hasNext())
                         {
                              throw new QmfException("Extra tokens at end of 'quote'");
@@ -155,62 +172,251 @@ public abstract class BooleanExpression extends Expression
         {
             throw new QmfException("Too many operands for operation: " + op);
         }
+
+        for (int i = 0; i < operandCount; i++)
+        {
+            _numbers[i] = parseNumber(_constants[i]);
+        }
     }
 
     /**
-     * Populates operands that are obtained at evaluation time. In other words operands that are obtained by using
-     * the key obtained from the static operand evaluation to look up an associated property from the QmfData object.
-     * @param data the object to extract the operand(s) from
+     * Parse a constant operand as a number. Integers are only returned as a Long if the constant is in the canonical
+     * form that Long.toString() would produce, so comparing a Long against the parsed constant gives the same result
+     * as comparing their String values.
+     *
+     * @param constant the constant operand, may be null.
+     * @return a Long if the constant is an integer, a Double if it is a floating point number otherwise null.
      */
-    protected void populateOperands(final QmfData data)
+    private static Number parseNumber(final String constant)
     {
-        for (int i = 0; i < _operands.length; i++)
+        if (constant == null || constant.length() == 0)
         {
-            String key = _keys[i];
-            if (key != null)
-            {
-                String value = null;
+            return null;
+        }
 
-                if (data.hasValue(key))
-                { // If there's a property of the data object named key look it up as a String
-                    value = data.getStringValue(key);
+        char c = constant.charAt(constant.length() - 1);
+        if (c >= '0' && c <= '9')
+        { // Only try to parse constants ending in a digit, which avoids most NumberFormatExceptions.
+            try
+            {
+                Long l = Long.valueOf(constant);
+                if (l.toString().equals(constant))
+                {
+                    return l;
                 }
-                else
-                { // If there's no property of the data object named key look up its Described/Managed metadata
-                    if (data instanceof QmfManaged)
-                    {
-                        QmfManaged managedData = (QmfManaged)data;
-                        if (key.equals("_schema_id"))
-                        {
-                            value = managedData.getSchemaClassId().toString();
-                        }
-                        else if (key.equals("_object_id"))
-                        {
-                            value = managedData.getObjectId().toString();
-                        }
-                        else if (managedData.getSchemaClassId().hasValue(key))
-                        { // If it's not _schema_id or _object_id check the SchemaClassId properties e.g. 
-                          // _package_name, _class_name, _type or _hash
-                            value = managedData.getSchemaClassId().getStringValue(key);
-                        }
-                    }
+            }
+            catch (NumberFormatException nfe)
+            { // Not an integer, try parsing as a floating point number below.
+            }
+        }
 
-                    if (value == null)
-                    { // If a value still can't be found for the key check if it's available in the mapEncoded form
-                        Map m = data.mapEncode();
-                        if (m.containsKey(key))
-                        {
-                            value = QmfData.getString(m.get(key));
-                        }
-                    }
-                }
+        try
+        {
+            return Double.valueOf(constant);
+        }
+        catch (NumberFormatException nfe)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Return the number of operands in this Expression.
+     * @return the number of operands in this Expression.
+     */
+    public final int getOperandCount()
+    {
+        return _keys.length;
+    }
+
+    /**
+     * Return the property name used to look up the specified operand at evaluation time.
+     * @param i the index of the operand.
+     * @return the property name used to look up the specified operand or null if the operand is a constant.
+     */
+    public final String getKey(final int i)
+    {
+        return _keys[i];
+    }
+
+    /**
+     * Return the value of the specified operand if it is a constant.
+     * @param i the index of the operand.
+     * @return the value of the specified operand or null if the operand is obtained at evaluation time.
+     */
+    public final String getConstant(final int i)
+    {
+        return _constants[i];
+    }
+
+    /**
+     * Return the value of the specified operand. Constant operands are returned as the constant String, operands
+     * that are obtained at evaluation time are obtained by using the key obtained from the static operand evaluation
+     * to look up an associated property from the QmfData object. The property is returned as its native type, it
+     * isn't converted to a String.
+     * @param data the object to extract the operand from
+     * @param i the index of the operand.
+     * @return the value of the operand or null if the QmfData object has no property for the operand's key.
+     */
+    protected final Object getOperand(final QmfData data, final int i)
+    {
+        String key = _keys[i];
+        if (key == null)
+        {
+            return _constants[i];
+        }
+
+        if (data.hasValue(key))
+        { // If there's a property of the data object named key look it up
+            return data.getValue(key);
+        }
 
-                _operands[i] = value;
+        // If there's no property of the data object named key look up its Described/Managed metadata
+        Object value = null;
+        if (data instanceof QmfManaged)
+        {
+            QmfManaged managedData = (QmfManaged)data;
+            if (key.equals("_schema_id"))
+            {
+                value = managedData.getSchemaClassId().toString();
+            }
+            else if (key.equals("_object_id"))
+            {
+                value = managedData.getObjectId().toString();
             }
-//System.out.println("key: " + key + ", operand = " + _operands[i]);
+            else if (managedData.getSchemaClassId().hasValue(key))
+            { // If it's not _schema_id or _object_id check the SchemaClassId properties e.g. 
+              // _package_name, _class_name, _type or _hash
+                value = managedData.getSchemaClassId().getValue(key);
+            }
+        }
+
+        if (value == null)
+        { // If a value still can't be found for the key check if it's available in the mapEncoded form
+            Map m = data.mapEncode();
+            if (m.containsKey(key))
+            {
+                value = m.get(key);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Return an operand value obtained from getOperand() as a String.
+     * @param operand the operand value.
+     * @return the String value of the operand or null if the operand is null.
+     */
+    protected static final String getStringOperand(final Object operand)
+    {
+        if (operand == null || operand instanceof String)
+        {
+            return (String)operand;
+        }
+        return QmfData.getString(operand);
+    }
+
+    /**
+     * Return the value of the specified operand as a Number, or null if it isn't numeric. Constants were parsed when
+     * the Expression was created, numeric properties are returned as is and any other property is parsed from its
+     * String value.
+     * @param operand the operand value obtained from getOperand().
+     * @param i the index of the operand.
+     * @return the Number value of the operand or null if the operand isn't numeric.
+     */
+    private Number getNumericOperand(final Object operand, final int i)
+    {
+        if (_keys[i] == null)
+        {
+            return _numbers[i];
+        }
+        else if (operand instanceof Number)
+        {
+            return (Number)operand;
+        }
+        else if (operand instanceof Boolean)
+        {
+            return null;
+        }
+
+        try
+        {
+            return Double.valueOf(getStringOperand(operand));
+        }
+        catch (NumberFormatException nfe)
+        {
+            return null;
         }
     }
 
+    /**
+     * Return true if the Number is an integer type that can be compared exactly as a long.
+     * @param n the Number being checked.
+     * @return true if the Number is a Long, Integer, Short or Byte.
+     */
+    private static boolean isIntegral(final Number n)
+    {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    /**
+     * Test whether the values of the first two operands are equal. The result is the same as comparing the String
+     * values of the operands, but integer properties are compared with integer constants without converting to a
+     * String. Both operands must be non-null.
+     * @param l the value of the first operand obtained from getOperand().
+     * @param r the value of the second operand obtained from getOperand().
+     * @return true if the operands are equal.
+     */
+    protected final boolean operandsEqual(final Object l, final Object r)
+    {
+        if (l instanceof String && r instanceof String)
+        {
+            return l.equals(r);
+        }
+
+        Number ln = (_keys[0] == null) ? _numbers[0] : (l instanceof Number ? (Number)l : null);
+        Number rn = (_keys[1] == null) ? _numbers[1] : (r instanceof Number ? (Number)r : null);
+        if (ln != null && rn != null && isIntegral(ln) && isIntegral(rn))
+        {
+            return ln.longValue() == rn.longValue();
+        }
+
+        return getStringOperand(l).equals(getStringOperand(r));
+    }
+
+    /**
+     * Compare the values of the first two operands. If both operands are numeric they are compared as numbers, as
+     * longs if both are integers otherwise as doubles, if not they are compared lexicographically as Strings.
+     * Both operands must be non-null.
+     * @param l the value of the first operand obtained from getOperand().
+     * @param r the value of the second operand obtained from getOperand().
+     * @return a negative integer, zero, or a positive integer as the first operand is less than, equal to, or
+     *         greater than the second.
+     */
+    protected final int compareOperands(final Object l, final Object r)
+    {
+        Number ln = getNumericOperand(l, 0);
+        Number rn = (ln == null) ? null : getNumericOperand(r, 1);
+        if (ln != null && rn != null)
+        {
+            if (isIntegral(ln) && isIntegral(rn))
+            {
+                long lv = ln.longValue();
+                long rv = rn.longValue();
+                return (lv < rv) ? -1 : ((lv == rv) ? 0 : 1);
+            }
+            else
+            {
+                double lv = ln.doubleValue();
+                double rv = rn.doubleValue();
+                return (lv < rv) ? -1 : ((lv > rv) ? 1 : 0);
+            }
+        }
+
+        // If either operand isn't numeric fall back to a lexicographic comparison
+        return getStringOperand(l).compareTo(getStringOperand(r));
+    }
+
     /**
      * Evaluate expression against a QmfData instance.
      * @param data the object to evaluate the expression against
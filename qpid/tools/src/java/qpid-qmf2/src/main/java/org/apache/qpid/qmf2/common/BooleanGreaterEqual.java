@@ -58,32 +58,22 @@ public final class BooleanGreaterEqual extends BooleanExpression
     
     /**
      * Evaluate "greater than or equal to" expression against a QmfData instance.
-     * N.B. to avoid complexities with types this class treats operands as Strings performing an appropriate evaluation
-     * of the String that makes sense for a given expression e.g. parsing as a double for {@literal >, >=, <, <= }
+     * N.B. if both operands are numeric they are compared natively as numbers, as longs if both are integers,
+     * otherwise this class falls back to a lexicographic comparison of their String values.
      *
      * @param data the object to evaluate the expression against
      * @return true if query matches the QmfData instance, else false.
      */
     public boolean evaluate(final QmfData data)
     {
-        populateOperands(data);
-
-        if (_operands[0] == null || _operands[1] == null)
+        Object l = getOperand(data, 0);
+        Object r = getOperand(data, 1);
+        if (l == null || r == null)
         {
             return false;
         }
 
-        try
-        {
-            double l = Double.parseDouble(_operands[0]);
-            double r = Double.parseDouble(_operands[1]);
-            return l >= r;
-        }
-        catch (NumberFormatException nfe)
-        {
-            // If converting to double fails try a lexicographic comparison
-            return _operands[0].compareTo(_operands[1]) >= 0;
-        }
+        return compareOperands(l, r) >= 0;
     }
 }
 
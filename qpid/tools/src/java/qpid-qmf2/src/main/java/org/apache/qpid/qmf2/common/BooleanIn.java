@@ -0,0 +1,135 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A class to create and evaluate the BooleanIn Expression.
+ * <p>
+ * This is an extension to the operators specified by QMF2 that tests whether a property is equal to any one of a
+ * list of constants, for example:
+ * <pre>
+ * ["in" "name" ["quote" "queue1"] ["quote" "queue2"] ["quote" "queue3"]]
+ * </pre>
+ * It is equivalent to an "or" of "eq" Expressions, but the constants are held in a HashSet so the cost of evaluating
+ * it doesn't depend on the number of constants. An Agent can also answer it from a property index if the property
+ * is indexed.
+ */
+public final class BooleanIn extends BooleanExpression
+{
+    private final Set<String> _values;
+    private final Set<Long> _longValues;
+
+    /**
+     * Factory method to create an instance of BooleanIn
+     * @param expr the List of Expressions extracted by parsing the Query predicate
+     * @return an instance of the concrete BooleanExpression
+     */
+    public Expression create(final List expr) throws QmfException
+    {
+        return new BooleanIn(expr);
+    }
+
+    /**
+     * Basic Constructor primarily used by the prototype instance of each concrete BooleanExpression
+     */
+    public BooleanIn()
+    {
+        _values = Collections.emptySet();
+        _longValues = Collections.emptySet();
+    }
+
+    /**
+     * Main Constructor, uses base class constructor to populate unevaluated operands. The first operand must be a
+     * property name and the remaining operands must be constants.
+     * @param expr the List of Expressions extracted by parsing the Query predicate
+     */
+    public BooleanIn(final List expr) throws QmfException
+    {
+        super(Math.max(expr.size() - 1, 2), expr);
+
+        if (getKey(0) == null)
+        {
+            throw new QmfException("The first operand of 'in' must be a property name");
+        }
+
+        _values = new HashSet<String>();
+        _longValues = new HashSet<Long>();
+        for (int i = 1; i < getOperandCount(); i++)
+        {
+            String value = getConstant(i);
+            if (value == null)
+            {
+                throw new QmfException("The operands of 'in' following the property name must be constants");
+            }
+            _values.add(value);
+
+            try
+            { // Record integer constants in canonical form so integer properties can be tested without a String.
+                Long l = Long.valueOf(value);
+                if (l.toString().equals(value))
+                {
+                    _longValues.add(l);
+                }
+            }
+            catch (NumberFormatException nfe)
+            { // Not an integer so it's only held as a String.
+            }
+        }
+    }
+
+    /**
+     * Return the constants that the property is tested against.
+     * @return an unmodifiable Set of the constants that the property is tested against.
+     */
+    public Set<String> getValues()
+    {
+        return Collections.unmodifiableSet(_values);
+    }
+
+    /**
+     * Evaluate "in" expression against a QmfData instance.
+     * N.B. as with "eq" this class compares the String value of the property with the constants, though integer
+     * properties are compared with integer constants natively without converting them to Strings.
+     *
+     * @param data the object to evaluate the expression against
+     * @return true if query matches the QmfData instance, else false.
+     */
+    public boolean evaluate(final QmfData data)
+    {
+        Object l = getOperand(data, 0);
+        if (l == null)
+        {
+            return false;
+        }
+
+        if (l instanceof Long || l instanceof Integer || l instanceof Short || l instanceof Byte)
+        {
+            return _longValues.contains(((Number)l).longValue());
+        }
+        return _values.contains(getStringOperand(l));
+    }
+}
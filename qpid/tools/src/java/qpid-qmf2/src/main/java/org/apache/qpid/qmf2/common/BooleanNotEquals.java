@@ -58,22 +58,22 @@ public final class BooleanNotEquals extends BooleanExpression
 
     /**
      * Evaluate "not equal to" expression against a QmfData instance.
-     * N.B. to avoid complexities with types this class treats operands as Strings performing an appropriate evaluation
-     * of the String that makes sense for a given expression e.g. parsing as a double for {@literal >, >=, <, <= }
+     * N.B. this class compares the String values of the operands, though integer properties are compared with
+     * integer constants natively without converting them to Strings.
      *
      * @param data the object to evaluate the expression against
      * @return true if query matches the QmfData instance, else false.
      */    
     public boolean evaluate(final QmfData data)
     {
-        populateOperands(data);
-
-        if (_operands[0] == null || _operands[1] == null)
+        Object l = getOperand(data, 0);
+        Object r = getOperand(data, 1);
+        if (l == null || r == null)
         {
             return false;
         }
 
-        return !_operands[0].equals(_operands[1]);
+        return !operandsEqual(l, r);
     }
 }
 
@@ -22,18 +22,19 @@ package org.apache.qpid.qmf2.common;
 
 // Misc Imports
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 /**
  * A class to create and evaluate the BooleanRegexMatch Expression
+ * <p>
+ * The regular expression is compiled into a StringMatcher, so literal, prefix, suffix and simple alternation
+ * patterns are evaluated using String operations rather than java.util.regex.
  *
  * @author Fraser Adams
  */
 public final class BooleanRegexMatch extends BooleanExpression
 {
-    private final Pattern _pattern;
+    private final StringMatcher _matcher;
 
     /**
      * Factory method to create an instance of BooleanRegexMatch
@@ -50,7 +51,7 @@ public final class BooleanRegexMatch extends BooleanExpression
      */
     public BooleanRegexMatch()
     {
-        _pattern = null;
+        _matcher = null;
     }
 
     /**
@@ -63,7 +64,7 @@ public final class BooleanRegexMatch extends BooleanExpression
 
         try
         {
-            _pattern = Pattern.compile(_operands[1]);
+            _matcher = StringMatcher.compile(getConstant(1));
         }
         catch (PatternSyntaxException pse)
         {
@@ -73,23 +74,20 @@ public final class BooleanRegexMatch extends BooleanExpression
     
     /**
      * Evaluate "regex match" expression against a QmfData instance.
-     * N.B. to avoid complexities with types this class treats operands as Strings performing an appropriate evaluation
-     * of the String that makes sense for a given expression e.g. parsing as a double for {@literal >, >=, <, <= }
+     * N.B. this class matches the pattern against the String value of the property.
      *
      * @param data the object to evaluate the expression against
      * @return true if query matches the QmfData instance, else false.
      */
     public boolean evaluate(final QmfData data)
     {
-        populateOperands(data);
-
-        if (_operands[0] == null || _operands[1] == null || _pattern == null)
+        Object l = getOperand(data, 0);
+        if (l == null || _matcher == null)
         {
             return false;
         }
 
-        Matcher matcher = _pattern.matcher(_operands[0]);
-        return matcher.find();
+        return _matcher.find(getStringOperand(l));
     }
 }
 
@@ -0,0 +1,74 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.HashMap;
+
+// Need the following to encode amqp/map
+import java.nio.ByteBuffer;
+import org.apache.qpid.transport.codec.BBEncoder;
+
+/**
+ * A java.util.Map that can cache its own amqp/map encoding.
+ * <p>
+ * This is used by the Agent to cache the mapEncoded form of QmfAgentData objects that haven't changed. When a List
+ * of EncodedMap is written via AMQPMessage.setList() each element's cached encoding is written directly, so an
+ * unchanged object is only serialised once however many query responses and subscription indications it is sent in.
+ * <p>
+ * An EncodedMap must not be modified after getEncoded() has been called, as the cached encoding won't reflect
+ * the modification.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+public final class EncodedMap extends HashMap<String, Object>
+{
+    private static final long serialVersionUID = 1L;
+
+    private transient volatile byte[] _encoded = null;
+
+    /**
+     * Construct an empty EncodedMap.
+     */
+    public EncodedMap()
+    {
+    }
+
+    /**
+     * Return the amqp/map encoding of this Map, encoding it on first use.
+     * @return the amqp/map encoding of this Map. The returned array must not be modified.
+     */
+    public byte[] getEncoded()
+    {
+        byte[] encoded = _encoded;
+        if (encoded == null)
+        {
+            BBEncoder encoder = AMQPMessage.acquireEncoder(0);
+            encoder.writeMap(this);
+            ByteBuffer buf = encoder.segment();
+            encoded = new byte[buf.remaining()];
+            buf.get(encoded);
+            AMQPMessage.releaseEncoder(encoder, buf);
+            _encoded = encoded;
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache of the planned Expressions created from QmfQuery predicates.
+ * <p>
+ * Consoles tend to send the same few predicates over and over again in _query_request and _subscribe_request
+ * messages, so rather than creating and planning a new Expression, which includes compiling any "re_match"
+ * Pattern, for each QmfQuery we look the predicate up in this cache. The cache is keyed by the structural form of
+ * the predicate, that is the predicate List itself, so equal predicates share an Expression whether they were
+ * parsed from a String by a Console or decoded from a message by an Agent. Sharing is safe because Expressions are
+ * immutable once created.
+ * <p>
+ * The maximum number of cached Expressions defaults to 256 and may be set via the "qmf.query.cache.size" system
+ * property, a size of zero or less disables the cache.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+final class ExpressionCache
+{
+    private static final int MAX_SIZE = Integer.getInteger("qmf.query.cache.size", 256);
+
+    private static final Map<List, Expression> _cache = new LinkedHashMap<List, Expression>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<List, Expression> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Make constructor private as this class provides a set of static helper methods and doesn't need instantiated.
+     */
+    private ExpressionCache()
+    {
+    }
+
+    /**
+     * Return the planned Expression for a predicate, creating it and adding it to the cache if necessary.
+     *
+     * @param predicate the predicate List.
+     * @return the planned Expression created from the predicate.
+     */
+    static Expression getExpression(final List predicate) throws QmfException
+    {
+        if (MAX_SIZE <= 0)
+        {
+            return QueryPlanner.plan(Expression.createExpression(predicate));
+        }
+
+        Expression expression;
+        synchronized(_cache)
+        {
+            expression = _cache.get(predicate);
+        }
+
+        if (expression == null)
+        { // Create the Expression outside the lock, if two threads race to do so they create equivalent Expressions.
+            expression = QueryPlanner.plan(Expression.createExpression(predicate));
+            List key = copy(predicate);
+            synchronized(_cache)
+            {
+                _cache.put(key, expression);
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Return a deep copy of a predicate List, so that the cache key can't be changed by later modifications to
+     * the predicate of the QmfQuery that added it.
+     *
+     * @param predicate the predicate List.
+     * @return a deep copy of the predicate List.
+     */
+    @SuppressWarnings("unchecked")
+    private static List copy(final List predicate)
+    {
+        List result = new ArrayList(predicate.size());
+        for (Object object : predicate)
+        {
+            result.add((object instanceof List) ? copy((List)object) : object);
+        }
+        return result;
+    }
+}
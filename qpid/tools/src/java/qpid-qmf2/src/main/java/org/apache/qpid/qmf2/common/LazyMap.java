@@ -0,0 +1,331 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Need the following to decode amqp/map
+import java.nio.ByteBuffer;
+import org.apache.qpid.transport.codec.BBDecoder;
+
+/**
+ * A read-mostly java.util.Map view over the amqp/map encoding of a Map held in a byte array.
+ * <p>
+ * A LazyMap is created by AMQPMessage.getList(message, true) for each Map element of an amqp/list. The first time
+ * the LazyMap is accessed it scans the encoded entries, recording the key and position of each value, but it
+ * doesn't decode any values. A value is then only decoded when it is first retrieved via get(), and nested Maps are
+ * themselves returned as LazyMap views over the same byte array. So a Console that only looks at a few properties
+ * of the objects it receives avoids building a Map and decoding every property of every object in a large response.
+ * <p>
+ * Operations that need every entry, such as entrySet(), or that modify the Map, such as put(), fully decode the
+ * Map into an internal HashMap the first time they are called, after which the LazyMap behaves like a HashMap.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+final class LazyMap extends AbstractMap<String, Object>
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The AMQP 0-10 type code for a map.
+     */
+    private static final int MAP_TYPE_CODE = 0xa8;
+
+    /**
+     * The AMQP 0-10 type code for void, which has no value.
+     */
+    private static final int VOID_TYPE_CODE = 0xf0;
+
+    /**
+     * The smallest possible encoded entry, a one byte key length for an empty key followed by a type code.
+     */
+    private static final int MIN_ENTRY_SIZE = 2;
+
+    private final byte[] _data;
+    private final int _offset;
+    private final int _length;
+
+    // The following are populated by index() on first access and released once the Map is fully decoded.
+    private Map<String, Integer> _index = null;
+    private int[] _types = null;
+    private int[] _valueOffsets = null;
+    private int[] _valueLengths = null;
+    private Object[] _values = null;
+    private boolean[] _decoded = null;
+
+    // Non-null once the Map has been fully decoded, after which all operations are delegated to it.
+    private Map<String, Object> _map = null;
+
+    /**
+     * Construct a LazyMap view over an amqp/map encoding.
+     *
+     * @param data the byte array holding the encoding.
+     * @param offset the offset in data of the start of the encoding, that is of its 32 bit size.
+     * @param length the length in bytes of the encoding, including its 32 bit size.
+     */
+    LazyMap(final byte[] data, final int offset, final int length)
+    {
+        _data = data;
+        _offset = offset;
+        _length = length;
+    }
+
+    /**
+     * Return the width in bytes of the encoded value with the specified type code, including any size prefix of
+     * variable width types, or -1 if the type code is reserved or the size is too large to be held in a byte array.
+     *
+     * @param data the byte array holding the encoded value.
+     * @param type the AMQP 0-10 type code of the value.
+     * @param offset the offset in data of the start of the value.
+     * @return the width in bytes of the encoded value, or -1 if the type code is reserved or the size is invalid.
+     */
+    static int getWidth(final byte[] data, final int type, final int offset)
+    {
+        switch (type >> 4)
+        {
+            case 0x0: return 1;
+            case 0x1: return 2;
+            case 0x2: return 4;
+            case 0x3: return 8;
+            case 0x4: return 16;
+            case 0x5: return 32;
+            case 0x6: return 64;
+            case 0x7: return 128;
+            case 0x8: return 1 + (data[offset] & 0xff);
+            case 0x9: return 2 + (((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff));
+            case 0xa:
+                long size = getUint32(data, offset);
+                return (size > Integer.MAX_VALUE - 4) ? -1 : 4 + (int)size;
+            case 0xc: return 5;
+            case 0xd: return 9;
+            case 0xf: return 0;
+            default:  return -1;
+        }
+    }
+
+    /**
+     * Return the big-endian 32 bit unsigned integer at the specified offset.
+     *
+     * @param data the byte array holding the integer.
+     * @param offset the offset in data of the integer.
+     * @return the big-endian 32 bit unsigned integer at the specified offset.
+     */
+    static long getUint32(final byte[] data, final int offset)
+    {
+        return ((long)(data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+               ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    /**
+     * Scan the encoded entries recording the key, type and position of each value. If the encoding can't be
+     * scanned, because it contains a reserved type code, is truncated or has an entry count or length that is
+     * inconsistent with its size, the Map is fully decoded instead so that the LazyMap behaves exactly like the Map
+     * that BBDecoder would have returned. The count and lengths are checked before anything is allocated, so a
+     * corrupt encoding can't cause a huge or negative allocation.
+     */
+    private void index()
+    {
+        if (_index != null || _map != null)
+        {
+            return;
+        }
+
+        try
+        {
+            int end = _offset + _length;
+            long count = (_length < 8) ? 0 : getUint32(_data, _offset + 4);
+            int position = _offset + 8;
+            if (end > _data.length || (count > 0 && count > (end - position)/MIN_ENTRY_SIZE))
+            {
+                decode();
+                return;
+            }
+
+            int entries = (int)count;
+            Map<String, Integer> index = new HashMap<String, Integer>(entries*4/3 + 1);
+            int[] types = new int[entries];
+            int[] valueOffsets = new int[entries];
+            int[] valueLengths = new int[entries];
+            for (int i = 0; i < entries; i++)
+            {
+                if (position + MIN_ENTRY_SIZE > end || position + MIN_ENTRY_SIZE + (_data[position] & 0xff) > end)
+                {
+                    decode();
+                    return;
+                }
+                int keyLength = _data[position] & 0xff;
+                String key = new String(_data, position + 1, keyLength, UTF8);
+                position += 1 + keyLength;
+                int type = _data[position++] & 0xff;
+                int width = getWidth(_data, type, position);
+                if (width < 0 || width > end - position)
+                {
+                    decode();
+                    return;
+                }
+                index.put(key, i); // If a key is duplicated the last value wins, as it does in BBDecoder.
+                types[i] = type;
+                valueOffsets[i] = position;
+                valueLengths[i] = width;
+                position += width;
+            }
+
+            _index = index;
+            _types = types;
+            _valueOffsets = valueOffsets;
+            _valueLengths = valueLengths;
+            _values = new Object[entries];
+            _decoded = new boolean[entries];
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            decode();
+        }
+    }
+
+    /**
+     * Fully decode the Map using BBDecoder, used when the encoding can't be scanned.
+     */
+    private void decode()
+    {
+        BBDecoder decoder = new BBDecoder();
+        decoder.init(ByteBuffer.wrap(_data, _offset, _length));
+        Map<String, Object> map = decoder.readMap();
+        _map = (map == null) ? new HashMap<String, Object>() : new HashMap<String, Object>(map);
+    }
+
+    /**
+     * Return the value of the i'th entry, decoding it on first use. Nested Maps are returned as LazyMap views.
+     *
+     * @param i the index of the entry.
+     * @return the decoded value of the i'th entry.
+     */
+    private Object getValue(final int i)
+    {
+        if (!_decoded[i])
+        {
+            int type = _types[i];
+            int offset = _valueOffsets[i];
+            int width = _valueLengths[i];
+            if (type == MAP_TYPE_CODE)
+            {
+                _values[i] = new LazyMap(_data, offset, width);
+            }
+            else if (type != VOID_TYPE_CODE)
+            { // Wrap the value in a single entry Map with an empty key so BBDecoder can decode it for us.
+                byte[] entry = new byte[10 + width];
+                int size = 6 + width;
+                entry[0] = (byte)(size >>> 24);
+                entry[1] = (byte)(size >>> 16);
+                entry[2] = (byte)(size >>> 8);
+                entry[3] = (byte)size;
+                entry[7] = 1;    // The entry count.
+                entry[8] = 0;    // The length of the empty key.
+                entry[9] = (byte)type;
+                System.arraycopy(_data, offset, entry, 10, width);
+                BBDecoder decoder = new BBDecoder();
+                decoder.init(ByteBuffer.wrap(entry));
+                _values[i] = decoder.readMap().get("");
+            }
+            _decoded[i] = true;
+        }
+        return _values[i];
+    }
+
+    /**
+     * Fully decode the Map into an internal HashMap, reusing any values that have already been decoded, and
+     * release the index.
+     *
+     * @return the fully decoded Map.
+     */
+    private Map<String, Object> materialise()
+    {
+        index();
+        if (_map == null)
+        {
+            Map<String, Object> map = new HashMap<String, Object>(_index.size()*4/3 + 1);
+            for (Map.Entry<String, Integer> entry : _index.entrySet())
+            {
+                map.put(entry.getKey(), getValue(entry.getValue()));
+            }
+            _map = map;
+            _index = null;
+            _types = null;
+            _valueOffsets = null;
+            _valueLengths = null;
+            _values = null;
+            _decoded = null;
+        }
+        return _map;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        index();
+        return (_map == null) ? _index.size() : _map.size();
+    }
+
+    @Override
+    public synchronized boolean containsKey(final Object key)
+    {
+        index();
+        return (_map == null) ? _index.containsKey(key) : _map.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object get(final Object key)
+    {
+        index();
+        if (_map == null)
+        {
+            Integer i = _index.get(key);
+            return (i == null) ? null : getValue(i);
+        }
+        else
+        {
+            return _map.get(key);
+        }
+    }
+
+    @Override
+    public synchronized Object put(final String key, final Object value)
+    {
+        return materialise().put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(final Object key)
+    {
+        return materialise().remove(key);
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<String, Object>> entrySet()
+    {
+        return materialise().entrySet();
+    }
+}
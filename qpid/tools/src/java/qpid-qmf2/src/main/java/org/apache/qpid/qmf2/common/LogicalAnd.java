@@ -42,6 +42,16 @@ public final class LogicalAnd extends LogicalExpression
         super(expr);
     }
 
+    /**
+     * Constructor used by the QueryPlanner to create a Logical And from already created sub-expressions.
+     *
+     * @param subExpressions the sub-expressions of the Logical Expression.
+     */
+    LogicalAnd(final Expression... subExpressions)
+    {
+        super(subExpressions);
+    }
+
     /**
      * Evaluate the Logical And expression against a QmfData instance.
      * @return false if any of the sub-expressions is false otherwise returns true
@@ -22,6 +22,7 @@ package org.apache.qpid.qmf2.common;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -32,7 +33,7 @@ import java.util.List;
  */
 public abstract class LogicalExpression extends Expression
 {
-    protected List<Expression> _subExpressions = new ArrayList<Expression>();
+    protected final List<Expression> _subExpressions = new ArrayList<Expression>();
 
     /**
      * Constructor. This method iterates through collecting the sub-expressions of the Logical Expression
@@ -60,5 +61,24 @@ public abstract class LogicalExpression extends Expression
             }
         }
     }
+
+    /**
+     * Constructor used by the QueryPlanner to create a Logical Expression from already created sub-expressions.
+     *
+     * @param subExpressions the sub-expressions of the Logical Expression.
+     */
+    LogicalExpression(final Expression[] subExpressions)
+    {
+        Collections.addAll(_subExpressions, subExpressions);
+    }
+
+    /**
+     * Return the sub-expressions of this Logical Expression.
+     * @return an unmodifiable List of the sub-expressions of this Logical Expression.
+     */
+    public final List<Expression> getSubExpressions()
+    {
+        return Collections.unmodifiableList(_subExpressions);
+    }
 }
 
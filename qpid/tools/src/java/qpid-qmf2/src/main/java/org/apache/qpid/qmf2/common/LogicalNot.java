@@ -42,6 +42,16 @@ public final class LogicalNot extends LogicalExpression
         super(expr);
     }
 
+    /**
+     * Constructor used by the QueryPlanner to create a Logical Not from already created sub-expressions.
+     *
+     * @param subExpressions the sub-expressions of the Logical Expression.
+     */
+    LogicalNot(final Expression... subExpressions)
+    {
+        super(subExpressions);
+    }
+
     /**
      * Evaluate the Logical Not expression against a QmfData instance.
      * @return false if any of the sub-expressions is true otherwise returns true
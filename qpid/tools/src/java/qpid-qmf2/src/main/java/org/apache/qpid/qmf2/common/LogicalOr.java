@@ -42,6 +42,16 @@ public final class LogicalOr extends LogicalExpression
         super(expr);
     }
 
+    /**
+     * Constructor used by the QueryPlanner to create a Logical Or from already created sub-expressions.
+     *
+     * @param subExpressions the sub-expressions of the Logical Expression.
+     */
+    LogicalOr(final Expression... subExpressions)
+    {
+        super(subExpressions);
+    }
+
     /**
      * Evaluate the Logical Or expression against a QmfData instance.
      * @return true if any of the sub-expressions is true otherwise returns false
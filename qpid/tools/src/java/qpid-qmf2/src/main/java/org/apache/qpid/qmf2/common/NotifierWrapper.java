@@ -33,6 +33,11 @@ public final class NotifierWrapper implements QmfEventListener
     private final Notifier  _notifier;
     private final WorkQueue _workQueue;
 
+    /**
+     * True if the WorkQueue is a subclass that overrides addWorkItem(), which must then be used to add WorkItems.
+     */
+    private final boolean _addWorkItemOverridden;
+
     /**
      * Wraps a Notifier and WorkQueue so that they me be triggered by a QmfEventListener onEvent() call.
      * @param notifier the Notifier instance that will be triggered when NotifierWrapper receives a WorkItem.
@@ -42,16 +47,39 @@ public final class NotifierWrapper implements QmfEventListener
     {
         _notifier  = notifier;
         _workQueue = workQueue;
+
+        boolean overridden = false;
+        try
+        {
+            overridden = workQueue.getClass().getMethod("addWorkItem", WorkItem.class).getDeclaringClass() !=
+                         WorkQueue.class;
+        }
+        catch (NoSuchMethodException nsme)
+        { // Can't happen as WorkQueue has a public addWorkItem() method.
+        }
+        _addWorkItemOverridden = overridden;
     }
 
     /**
      * This method adds the WorkItem to the WorkQueue then notifies any clients through the Notifier.indication().
+     * <p>
+     * If the WorkQueue doesn't queue a new WorkItem, because it was merged into a pending WorkItem (or discarded)
+     * the indication is coalesced with the one already made for the pending WorkItems, as clients will retrieve
+     * the merged WorkItem when they next drain the WorkQueue. If the WorkQueue is a subclass that overrides
+     * addWorkItem() rather than offerWorkItem() its addWorkItem() is called and clients are always notified.
      *
      * @param item the WorkItem to add to the queue
      */
     public void onEvent(final WorkItem item)
     {
-        _workQueue.addWorkItem(item);
-        _notifier.indication();
+        if (_addWorkItemOverridden)
+        {
+            _workQueue.addWorkItem(item);
+            _notifier.indication();
+        }
+        else if (_workQueue.offerWorkItem(item))
+        {
+            _notifier.indication();
+        }
     }
 }
@@ -0,0 +1,693 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.console.Agent;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+import org.apache.qpid.qmf2.console.SubscribeIndication;
+import org.apache.qpid.qmf2.console.SubscriptionIndicationWorkItem;
+
+/**
+ * A QmfEventListener that dispatches WorkItems to another QmfEventListener on a pool of threads, preserving the
+ * order of the WorkItems that share an ordering key.
+ * <p>
+ * A QmfEventListener passed to a Console or Agent is called from the JMS MessageListener thread, so a slow
+ * listener (for example one that makes a blocking invokeMethod() call) delays the processing of heartbeats and the
+ * WorkItems of every other Agent. Wrapping the listener in an OrderedEventDispatcher moves the listener onto a pool
+ * of threads so that the MessageListener thread is never blocked by the application, e.g.
+ * <pre>
+ * Console console = new Console(new OrderedEventDispatcher(listener, 4, OrderedEventDispatcher.Ordering.AGENT));
+ * </pre>
+ * Each ordering key has its own lane; WorkItems in the same lane are delivered one at a time in the order that
+ * they arrived, whereas different lanes are delivered in parallel, so the wrapped listener must be thread safe.
+ * The ordering keys are:
+ * <pre>
+ * Console WorkItems with an Agent       - the Agent's name
+ * OBJECT_UPDATE, SUBSCRIPTION_INDICATION - the name of the Agent that owns the data, or with Ordering.OBJECT_ID
+ *                                          the ObjectId of the data. In that case SUBSCRIPTION_INDICATIONs are split
+ *                                          into one SUBSCRIPTION_INDICATION per object.
+ * Other WorkItems with a Handle          - the replyTo routing key (i.e. the requesting Console) for Agent WorkItems
+ *                                          or the correlation ID for Console responses.
+ * Anything else                          - a shared lane
+ * </pre>
+ * With Ordering.OBJECT_ID an Agent's lifecycle WorkItems (AGENT_ADDED, AGENT_RESTARTED and AGENT_DELETED) act as a
+ * barrier across all lanes: they are delivered after every WorkItem that arrived before them and before any
+ * WorkItem that arrived after them, so for example an AgentRestarted is never overtaken by the data that the
+ * restarted Agent goes on to publish. WorkItems that arrive while a barrier is pending are held until it has been
+ * delivered, so parallelism briefly drops to a single lane whenever an Agent is added, restarted or deleted.
+ * <p>
+ * Each lane holds at most a fixed number of pending WorkItems, as does the queue of WorkItems held by a barrier.
+ * When a WorkItem arrives for a full lane the OverflowPolicy discards either the oldest pending WorkItem or the new
+ * one, rather than blocking the MessageListener thread; barrier WorkItems are never discarded. The number of
+ * WorkItems discarded is returned by getDroppedCount().
+ * <p>
+ * The pool is either supplied by the application, which allows any Executor to be used (for example one that
+ * creates a virtual thread per task on JVMs that support them), or created as a fixed pool of daemon threads.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+public final class OrderedEventDispatcher implements QmfEventListener
+{
+    private static final Logger _log = LoggerFactory.getLogger(OrderedEventDispatcher.class);
+
+    /**
+     * The maximum number of WorkItems a lane delivers before yielding its thread to other lanes.
+     */
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * The default maximum number of pending WorkItems in a lane.
+     */
+    private static final int DEFAULT_LANE_CAPACITY = 10000;
+
+    /**
+     * The granularity of the ordering guarantee.
+     */
+    public enum Ordering
+    {
+        /**
+         * WorkItems relating to the same Agent are delivered in order.
+         */
+        AGENT,
+        /**
+         * WorkItems relating to the same object are delivered in order, WorkItems for different objects owned by
+         * the same Agent may be delivered in parallel.
+         */
+        OBJECT_ID
+    }
+
+    /**
+     * A lane of WorkItems that share an ordering key. At most one pool thread runs a Lane at any time. A Lane is
+     * retired and removed from _lanes when it becomes empty, after which a new Lane is created for the key.
+     */
+    private final class Lane implements Runnable
+    {
+        private final Object _key;
+        private final Queue<WorkItem> _items = new ArrayDeque<WorkItem>();
+        private boolean _running = false;
+        private boolean _retired = false;
+
+        /**
+         * Construct a Lane for the specified ordering key.
+         * @param key the ordering key.
+         */
+        public Lane(final Object key)
+        {
+            _key = key;
+        }
+
+        /**
+         * Add a WorkItem to the Lane, scheduling the Lane on the pool if it isn't already running. If the Lane is
+         * full a WorkItem is discarded as determined by the OverflowPolicy.
+         * @param item the WorkItem to add.
+         * @return false if the Lane has been retired, in which case the caller must use a new Lane.
+         */
+        public boolean add(final WorkItem item)
+        {
+            synchronized (this)
+            {
+                if (_retired)
+                {
+                    return false;
+                }
+
+                if (_items.size() >= _laneCapacity)
+                {
+                    discarded(1);
+                    if (_policy == WorkQueue.OverflowPolicy.DROP_NEWEST)
+                    { // A full Lane is always running, so there's nothing to schedule.
+                        return true;
+                    }
+                    _items.poll();
+                }
+                _items.add(item);
+                if (_running)
+                {
+                    return true;
+                }
+                _running = true;
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         * Deliver up to MAX_BATCH WorkItems to the listener then reschedule the Lane if it has more, or retire it.
+         */
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < MAX_BATCH; i++)
+                {
+                    WorkItem item;
+                    synchronized (this)
+                    {
+                        item = _items.poll();
+                    }
+                    if (item == null)
+                    {
+                        break;
+                    }
+
+                    try
+                    {
+                        _listener.onEvent(item);
+                    }
+                    catch (RuntimeException re)
+                    {
+                        _log.info("RuntimeException {} caught in OrderedEventDispatcher listener", re.getMessage());
+                    }
+                    finally
+                    {
+                        delivered();
+                    }
+                }
+            }
+            finally
+            { // This also runs if the listener throws an Error, otherwise _running would stay set and the Lane's
+              // remaining WorkItems would never be delivered.
+                boolean more;
+                synchronized (this)
+                {
+                    more = !_items.isEmpty();
+                    if (!more)
+                    {
+                        _running = false;
+                        _retired = true;
+                        _lanes.remove(_key, this);
+                    }
+                }
+
+                if (more)
+                {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Submit the Lane to the pool. If the pool has been shut down the Lane's WorkItems are discarded.
+         */
+        private void schedule()
+        {
+            try
+            {
+                _executor.execute(this);
+            }
+            catch (RejectedExecutionException ree)
+            {
+                _log.info("RejectedExecutionException {} caught in OrderedEventDispatcher", ree.getMessage());
+                synchronized (this)
+                {
+                    discarded(_items.size());
+                    _items.clear();
+                    _running = false;
+                    _retired = true;
+                    _lanes.remove(_key, this);
+                }
+            }
+        }
+    }
+
+    /**
+     * The key used for WorkItems that have no other ordering key.
+     */
+    private static final Object SHARED_KEY = new Object();
+
+    private final QmfEventListener _listener;
+    private final Executor _executor;
+    private final ExecutorService _ownedExecutor;
+    private final Ordering _ordering;
+    private final int _laneCapacity;
+    private final WorkQueue.OverflowPolicy _policy;
+
+    /**
+     * The Lanes that currently have WorkItems pending or being delivered, indexed by ordering key.
+     */
+    private final ConcurrentMap<Object, Lane> _lanes = new ConcurrentHashMap<Object, Lane>();
+
+    /**
+     * The number of WorkItems discarded because their Lane was full or the pool had been shut down.
+     */
+    private final AtomicLong _droppedCount = new AtomicLong();
+
+    /**
+     * With Ordering.OBJECT_ID, the number of WorkItems that have been added to a Lane but not yet delivered. A
+     * barrier WorkItem is dispatched when this reaches zero.
+     */
+    private final AtomicInteger _undelivered = new AtomicInteger();
+
+    /**
+     * With Ordering.OBJECT_ID, serialises dispatching WorkItems with holding and releasing them at barriers.
+     */
+    private final Object _barrierLock = new Object();
+
+    /**
+     * With Ordering.OBJECT_ID, the WorkItems held in arrival order because of a barrier, the first barrier WorkItem
+     * in the queue is waiting for all of the WorkItems that arrived before it to be delivered. Guarded by
+     * _barrierLock.
+     */
+    private final Queue<WorkItem> _held = new ArrayDeque<WorkItem>();
+
+    /**
+     * With Ordering.OBJECT_ID, true while a barrier WorkItem has been dispatched but not yet delivered. Guarded by
+     * _barrierLock.
+     */
+    private boolean _barrierInFlight = false;
+
+    /**
+     * Construct an OrderedEventDispatcher that delivers WorkItems on the supplied Executor, with lanes that hold at
+     * most 10000 pending WorkItems and discard the oldest when full.
+     *
+     * @param listener the QmfEventListener that WorkItems are delivered to, this must be thread safe.
+     * @param executor the Executor used to deliver WorkItems.
+     * @param ordering the granularity of the ordering guarantee, defaults to AGENT if null.
+     */
+    public OrderedEventDispatcher(final QmfEventListener listener, final Executor executor, final Ordering ordering)
+    {
+        this(listener, executor, null, ordering, DEFAULT_LANE_CAPACITY, WorkQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Construct an OrderedEventDispatcher that delivers WorkItems on the supplied Executor.
+     *
+     * @param listener the QmfEventListener that WorkItems are delivered to, this must be thread safe.
+     * @param executor the Executor used to deliver WorkItems.
+     * @param ordering the granularity of the ordering guarantee, defaults to AGENT if null.
+     * @param laneCapacity the maximum number of pending WorkItems in a lane.
+     * @param policy the WorkItem to discard when a lane is full, either DROP_OLDEST or DROP_NEWEST.
+     */
+    public OrderedEventDispatcher(final QmfEventListener listener, final Executor executor, final Ordering ordering,
+                                  final int laneCapacity, final WorkQueue.OverflowPolicy policy)
+    {
+        this(listener, executor, null, ordering, laneCapacity, policy);
+    }
+
+    /**
+     * Construct an OrderedEventDispatcher that delivers WorkItems on a fixed pool of daemon threads, which are
+     * stopped by shutdown(), with lanes that hold at most 10000 pending WorkItems and discard the oldest when full.
+     *
+     * @param listener the QmfEventListener that WorkItems are delivered to, this must be thread safe.
+     * @param threads the number of threads in the pool.
+     * @param ordering the granularity of the ordering guarantee, defaults to AGENT if null.
+     */
+    public OrderedEventDispatcher(final QmfEventListener listener, final int threads, final Ordering ordering)
+    {
+        this(listener, threads, ordering, DEFAULT_LANE_CAPACITY, WorkQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Construct an OrderedEventDispatcher that delivers WorkItems on a fixed pool of daemon threads, which are
+     * stopped by shutdown().
+     *
+     * @param listener the QmfEventListener that WorkItems are delivered to, this must be thread safe.
+     * @param threads the number of threads in the pool.
+     * @param ordering the granularity of the ordering guarantee, defaults to AGENT if null.
+     * @param laneCapacity the maximum number of pending WorkItems in a lane.
+     * @param policy the WorkItem to discard when a lane is full, either DROP_OLDEST or DROP_NEWEST.
+     */
+    public OrderedEventDispatcher(final QmfEventListener listener, final int threads, final Ordering ordering,
+                                  final int laneCapacity, final WorkQueue.OverflowPolicy policy)
+    {
+        this(listener, null, createPool(threads), ordering, laneCapacity, policy);
+    }
+
+    /**
+     * Common constructor.
+     *
+     * @param listener the QmfEventListener that WorkItems are delivered to.
+     * @param executor the application's Executor, or null if ownedExecutor is supplied.
+     * @param ownedExecutor an ExecutorService created by, and shut down by, this OrderedEventDispatcher.
+     * @param ordering the granularity of the ordering guarantee.
+     * @param laneCapacity the maximum number of pending WorkItems in a lane.
+     * @param policy the WorkItem to discard when a lane is full.
+     */
+    private OrderedEventDispatcher(final QmfEventListener listener, final Executor executor,
+                                   final ExecutorService ownedExecutor, final Ordering ordering,
+                                   final int laneCapacity, final WorkQueue.OverflowPolicy policy)
+    {
+        if (listener == null || (executor == null && ownedExecutor == null))
+        {
+            throw new IllegalArgumentException("OrderedEventDispatcher requires a listener and an Executor");
+        }
+
+        if (laneCapacity <= 0)
+        {
+            throw new IllegalArgumentException("OrderedEventDispatcher lane capacity must be greater than zero");
+        }
+
+        if (policy != WorkQueue.OverflowPolicy.DROP_OLDEST && policy != WorkQueue.OverflowPolicy.DROP_NEWEST)
+        { // BLOCK would block the MessageListener thread, which is what an OrderedEventDispatcher exists to avoid.
+            throw new IllegalArgumentException("OrderedEventDispatcher only supports DROP_OLDEST and DROP_NEWEST");
+        }
+
+        _listener = listener;
+        _ownedExecutor = ownedExecutor;
+        _executor = (executor == null) ? ownedExecutor : executor;
+        _ordering = (ordering == null) ? Ordering.AGENT : ordering;
+        _laneCapacity = laneCapacity;
+        _policy = policy;
+    }
+
+    /**
+     * Create a fixed pool of daemon threads so that the pool doesn't prevent the JVM from exiting.
+     *
+     * @param threads the number of threads in the pool.
+     * @return the pool.
+     */
+    private static ExecutorService createPool(final int threads)
+    {
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("OrderedEventDispatcher thread count must be greater than zero");
+        }
+
+        return Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger _count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r)
+            {
+                Thread thread = new Thread(r, "qmf-event-dispatcher-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stop the pool of threads if it was created by this OrderedEventDispatcher. WorkItems that haven't been
+     * delivered are discarded.
+     */
+    public void shutdown()
+    {
+        if (_ownedExecutor != null)
+        {
+            _ownedExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the number of WorkItems that have been discarded because their lane was full, or because the pool had
+     * been shut down.
+     * @return the number of WorkItems that have been discarded.
+     */
+    public long getDroppedCount()
+    {
+        return _droppedCount.get();
+    }
+
+    /**
+     * Add the WorkItem to the Lane for its ordering key. This is called by the Console or Agent on the JMS
+     * MessageListener thread and never blocks on the wrapped listener.
+     *
+     * @param item the WorkItem to deliver.
+     */
+    public void onEvent(final WorkItem item)
+    {
+        if (_ordering == Ordering.OBJECT_ID)
+        {
+            synchronized (_barrierLock)
+            {
+                if (_barrierInFlight || !_held.isEmpty() || isBarrier(item))
+                {
+                    hold(item);
+                    release();
+                }
+                else
+                {
+                    dispatchObject(item);
+                }
+            }
+        }
+        else
+        {
+            dispatch(item, getOrderingKey(item));
+        }
+    }
+
+    /**
+     * Return true if the WorkItem is an Agent lifecycle WorkItem that acts as a barrier with Ordering.OBJECT_ID.
+     *
+     * @param item the WorkItem.
+     * @return true if the WorkItem is an AGENT_ADDED, AGENT_RESTARTED or AGENT_DELETED WorkItem.
+     */
+    private static boolean isBarrier(final WorkItem item)
+    {
+        WorkItem.WorkItemType type = item.getType();
+        return type == WorkItem.WorkItemType.AGENT_ADDED || type == WorkItem.WorkItemType.AGENT_RESTARTED ||
+               type == WorkItem.WorkItemType.AGENT_DELETED;
+    }
+
+    /**
+     * Add a WorkItem to the queue of WorkItems held by a barrier, discarding a WorkItem that isn't a barrier as
+     * determined by the OverflowPolicy if the queue is full. Called holding _barrierLock.
+     *
+     * @param item the WorkItem to hold.
+     */
+    private void hold(final WorkItem item)
+    {
+        if (_held.size() >= _laneCapacity)
+        {
+            if (_policy == WorkQueue.OverflowPolicy.DROP_NEWEST && !isBarrier(item))
+            {
+                _droppedCount.incrementAndGet();
+                return;
+            }
+
+            for (Iterator<WorkItem> i = _held.iterator(); i.hasNext();)
+            {
+                if (!isBarrier(i.next()))
+                {
+                    i.remove();
+                    _droppedCount.incrementAndGet();
+                    break;
+                }
+            }
+        }
+        _held.add(item);
+    }
+
+    /**
+     * Dispatch the held WorkItems in arrival order until a barrier WorkItem is reached. A barrier is dispatched
+     * once every WorkItem before it has been delivered, and the WorkItems after it are dispatched once it has
+     * been delivered. Called holding _barrierLock.
+     */
+    private void release()
+    {
+        if (_barrierInFlight && _undelivered.get() == 0)
+        {
+            _barrierInFlight = false;
+        }
+
+        while (!_barrierInFlight && !_held.isEmpty())
+        {
+            WorkItem item = _held.peek();
+            if (isBarrier(item))
+            {
+                if (_undelivered.get() != 0)
+                {
+                    return;
+                }
+                _barrierInFlight = true;
+            }
+            // N.B. remove the WorkItem before dispatching it, as an Executor that runs tasks on the calling thread
+            // will deliver it, and call release() again, before dispatchObject() returns.
+            _held.poll();
+            dispatchObject(item);
+        }
+    }
+
+    /**
+     * Called when a Lane has delivered a WorkItem to the listener. With Ordering.OBJECT_ID this releases any
+     * barrier that was waiting for the WorkItems that are now all delivered.
+     */
+    private void delivered()
+    {
+        if (_ordering == Ordering.OBJECT_ID && _undelivered.decrementAndGet() == 0)
+        {
+            synchronized (_barrierLock)
+            {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Called when WorkItems that had been added to a Lane are discarded. A Lane is only full while it has WorkItems
+     * to deliver and nothing is delivered once the pool has been shut down, so this never needs to release a
+     * barrier, which means it may be called holding a Lane's lock.
+     *
+     * @param count the number of WorkItems discarded.
+     */
+    private void discarded(final int count)
+    {
+        _droppedCount.addAndGet(count);
+        if (_ordering == Ordering.OBJECT_ID)
+        {
+            _undelivered.addAndGet(-count);
+        }
+    }
+
+    /**
+     * Dispatch a WorkItem with Ordering.OBJECT_ID, splitting a SUBSCRIPTION_INDICATION into one per object.
+     *
+     * @param item the WorkItem to deliver.
+     */
+    private void dispatchObject(final WorkItem item)
+    {
+        if (item.getType() == WorkItem.WorkItemType.SUBSCRIPTION_INDICATION)
+        {
+            SubscribeIndication indication = item.getParams();
+            List<QmfConsoleData> data = indication.getData();
+            if (data.size() > 1)
+            {
+                for (QmfConsoleData record : data)
+                {
+                    List<QmfConsoleData> single = Collections.singletonList(record);
+                    dispatch(new SubscriptionIndicationWorkItem(
+                        new SubscribeIndication(indication.getConsoleHandle(), single)), getKey(record));
+                }
+                return;
+            }
+        }
+        dispatch(item, getOrderingKey(item));
+    }
+
+    /**
+     * Add a WorkItem to the Lane for the specified key, creating the Lane if necessary.
+     *
+     * @param item the WorkItem to deliver.
+     * @param key the ordering key.
+     */
+    private void dispatch(final WorkItem item, final Object key)
+    {
+        if (_ordering == Ordering.OBJECT_ID)
+        {
+            _undelivered.incrementAndGet();
+        }
+
+        while (true)
+        {
+            Lane lane = _lanes.get(key);
+            if (lane == null)
+            {
+                Lane newLane = new Lane(key);
+                lane = _lanes.putIfAbsent(key, newLane);
+                if (lane == null)
+                {
+                    lane = newLane;
+                }
+            }
+
+            if (lane.add(item))
+            {
+                return;
+            }
+            // The Lane was retired after we looked it up, so retry with a new one.
+            _lanes.remove(key, lane);
+        }
+    }
+
+    /**
+     * Return the ordering key for a WorkItem.
+     *
+     * @param item the WorkItem.
+     * @return the ordering key for the WorkItem.
+     */
+    private Object getOrderingKey(final WorkItem item)
+    {
+        Object params = item.getParams();
+        if (params instanceof Map)
+        {
+            Object agent = ((Map)params).get("agent");
+            if (agent instanceof Agent)
+            {
+                return ((Agent)agent).getName();
+            }
+        }
+        else if (params instanceof QmfConsoleData)
+        {
+            return getKey((QmfConsoleData)params);
+        }
+        else if (params instanceof SubscribeIndication)
+        {
+            List<QmfConsoleData> data = ((SubscribeIndication)params).getData();
+            if (data.size() > 0)
+            {
+                return getKey(data.get(0));
+            }
+        }
+
+        Handle handle = item.getHandle();
+        if (handle != null)
+        {
+            if (handle.getReplyTo() != null)
+            {
+                return handle.getRoutingKey();
+            }
+            else if (handle.getCorrelationId() != null)
+            {
+                return handle.getCorrelationId();
+            }
+        }
+        return SHARED_KEY;
+    }
+
+    /**
+     * Return the ordering key for a QmfConsoleData.
+     *
+     * @param data the QmfConsoleData.
+     * @return the ObjectId or Agent name of the data depending on the Ordering.
+     */
+    private Object getKey(final QmfConsoleData data)
+    {
+        ObjectId id = data.getObjectId();
+        if (id == null)
+        {
+            return SHARED_KEY;
+        }
+        return (_ordering == Ordering.OBJECT_ID) ? id : id.getAgentName();
+    }
+}
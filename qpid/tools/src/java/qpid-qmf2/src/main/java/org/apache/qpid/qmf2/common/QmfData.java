@@ -22,8 +22,10 @@ package org.apache.qpid.qmf2.common;
 
 // Misc Imports
 import java.io.UnsupportedEncodingException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * QMF defines the QmfData class to represent an atomic unit of managment data.
@@ -52,6 +54,12 @@ public class QmfData
     protected Map<String, Object> _values = null;
     protected Map<String, String> _subtypes = null;
 
+    /**
+     * Incremented whenever the state of this QmfData changes via its mutator methods, this allows subclasses to cache
+     * state derived from the values, such as their mapEncoded form, until the values next change.
+     */
+    private final AtomicLong _version = new AtomicLong();
+
     /**
      * The default constructor, initialises the QmfData with an empty Map.
      */
@@ -103,6 +111,28 @@ public class QmfData
     public void setSubtypes(Map subtypes)
     {
         _subtypes = subtypes;
+        _version.incrementAndGet();
+    }
+
+    /**
+     * Return the current version of this QmfData's state, the version changes whenever a mutator changes the state.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @return the current version of this QmfData's state.
+     */
+    protected final long getVersion()
+    {
+        return _version.get();
+    }
+
+    /**
+     * Indicate that the state of this QmfData has changed, invalidating any state that subclasses have derived.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     */
+    protected final void incrementVersion()
+    {
+        _version.incrementAndGet();
     }
 
     /**
@@ -270,7 +300,37 @@ public class QmfData
      */
     public final void setValue(final String name, final Object value)
     {
-        _values.put(name, value);
+        // Only change the version if the value has actually changed, as Agents often set unchanged properties. A
+        // container set again as the same instance may have been mutated in place, so that always counts as a change.
+        Object oldValue = _values.put(name, value);
+        if (oldValue == null || !oldValue.equals(value) || (oldValue == value && isContainer(value)))
+        {
+            _version.incrementAndGet();
+            valueChanged(name);
+        }
+    }
+
+    /**
+     * Return true if the value is a container whose contents may be changed without changing the instance.
+     *
+     * @param value the property value to check.
+     * @return true if the value is a Map, a Collection or an array.
+     */
+    private static boolean isContainer(final Object value)
+    {
+        return value instanceof Map || value instanceof Collection || value.getClass().isArray();
+    }
+
+    /**
+     * Called by setValue() when the value of the named property has changed, allowing subclasses to maintain state
+     * derived from individual property values. The default implementation does nothing.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param name the name of the property that has changed.
+     */
+    protected void valueChanged(final String name)
+    {
     }
 
     /**
@@ -299,6 +359,7 @@ public class QmfData
             _subtypes = new HashMap<String, String>();
         }
         _subtypes.put(name, subtype);
+        _version.incrementAndGet();
     }
 
     /**
@@ -0,0 +1,288 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A QmfFuture represents the pending result of an asynchronous QMF request, such as Console.getObjectsAsync().
+ * <p>
+ * As well as the usual blocking java.util.concurrent.Future methods a QmfFuture allows Listeners to be registered
+ * that are called once the request completes, this allows applications to compose large numbers of concurrent
+ * QMF requests without needing to park a Thread on each one.
+ * <p>
+ * Listeners are called on the Thread that completes the QmfFuture, which will generally be the Console's JMS
+ * MessageListener Thread or, if the request times out, its Timer Thread. Listeners should therefore avoid doing
+ * anything that might block for long periods. In particular a Listener called on the Thread that delivers
+ * responses can't make synchronous Console calls such as getObjects(), which would wait for a response that only
+ * that Thread can deliver, so the Console throws IllegalStateException instead. Use the asynchronous variants,
+ * or hand the work to another Thread. If a Listener is added to a QmfFuture that has already completed
+ * it is called immediately on the Thread that added it. A RuntimeException thrown by a Listener is logged and
+ * doesn't prevent the other Listeners from being called, nor does it propagate to the Console's Threads.
+ */
+public final class QmfFuture<T> implements Future<T>
+{
+    private static final Logger _log = LoggerFactory.getLogger(QmfFuture.class);
+
+    /**
+     * Implemented by clients wishing to be told when a QmfFuture completes.
+     */
+    public interface Listener<T>
+    {
+        /**
+         * Called once the QmfFuture has completed, successfully or otherwise.
+         * @param future the QmfFuture that has completed.
+         */
+        public void onComplete(QmfFuture<T> future);
+    }
+
+    private List<Listener<T>> _listeners = new ArrayList<Listener<T>>();
+    private T _result = null;
+    private QmfException _exception = null;
+    private boolean _done = false;
+    private boolean _cancelled = false;
+
+    /**
+     * Create a QmfFuture that has already completed with the given result.
+     * @param result the result of the QmfFuture.
+     * @return a completed QmfFuture.
+     */
+    public static <T> QmfFuture<T> completed(final T result)
+    {
+        QmfFuture<T> future = new QmfFuture<T>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Create a QmfFuture that has already failed with the given exception.
+     * @param exception the QmfException that caused the failure.
+     * @return a failed QmfFuture.
+     */
+    public static <T> QmfFuture<T> failed(final QmfException exception)
+    {
+        QmfFuture<T> future = new QmfFuture<T>();
+        future.fail(exception);
+        return future;
+    }
+
+    /**
+     * Mark the QmfFuture as done and notify any waiting Threads and Listeners.
+     *
+     * @return true if this call completed the QmfFuture, false if it had already completed.
+     */
+    private boolean done(final T result, final QmfException exception, final boolean cancelled)
+    {
+        List<Listener<T>> listeners;
+        synchronized(this)
+        {
+            if (_done)
+            {
+                return false;
+            }
+            _result = result;
+            _exception = exception;
+            _cancelled = cancelled;
+            _done = true;
+            listeners = _listeners;
+            _listeners = null;
+            notifyAll();
+        }
+
+        // Call the Listeners outside the lock in case they (indirectly) try to call back into this QmfFuture.
+        for (Listener<T> listener : listeners)
+        {
+            notifyListener(listener);
+        }
+        return true;
+    }
+
+    /**
+     * Call a Listener, logging rather than propagating any RuntimeException it throws. The Listener may be called
+     * on the Console's Timer Thread and an exception escaping from a TimerTask would kill the Timer.
+     *
+     * @param listener the Listener to call.
+     */
+    private void notifyListener(final Listener<T> listener)
+    {
+        try
+        {
+            listener.onComplete(this);
+        }
+        catch (RuntimeException re)
+        {
+            _log.info("RuntimeException {} caught in QmfFuture Listener", re.getMessage());
+        }
+    }
+
+    /**
+     * Complete the QmfFuture successfully.
+     *
+     * @param result the result of the request.
+     * @return true if this call completed the QmfFuture, false if it had already completed.
+     */
+    public boolean complete(final T result)
+    {
+        return done(result, null, false);
+    }
+
+    /**
+     * Complete the QmfFuture unsuccessfully.
+     *
+     * @param exception the QmfException describing the reason for the failure.
+     * @return true if this call completed the QmfFuture, false if it had already completed.
+     */
+    public boolean fail(final QmfException exception)
+    {
+        return done(null, exception, false);
+    }
+
+    /**
+     * Add a Listener to be called when the QmfFuture completes. If it has already completed the Listener is
+     * called immediately.
+     *
+     * @param listener the Listener to be called when the QmfFuture completes.
+     */
+    public void addListener(final Listener<T> listener)
+    {
+        synchronized(this)
+        {
+            if (!_done)
+            {
+                _listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Return the result of a completed QmfFuture without blocking.
+     * @return the result of the request, or null if the QmfFuture has not completed successfully.
+     */
+    public synchronized T getResult()
+    {
+        return _result;
+    }
+
+    /**
+     * Return the reason that a completed QmfFuture failed without blocking.
+     * @return the QmfException describing the failure, or null if the QmfFuture has not failed.
+     */
+    public synchronized QmfException getException()
+    {
+        return _exception;
+    }
+
+    /**
+     * Attempt to cancel the request. Note that this only affects the local QmfFuture, any request that has
+     * already been sent to an Agent will still be processed by that Agent and its response will be discarded.
+     *
+     * @param mayInterruptIfRunning ignored, as there is no local Thread running the request to be interrupted.
+     * @return true if this call cancelled the QmfFuture, false if it had already completed.
+     */
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        return done(null, new QmfException("Request cancelled"), true);
+    }
+
+    /**
+     * Return true if the QmfFuture was cancelled before it completed normally.
+     * @return true if the QmfFuture was cancelled before it completed normally.
+     */
+    public synchronized boolean isCancelled()
+    {
+        return _cancelled;
+    }
+
+    /**
+     * Return true if the QmfFuture has completed, failed or been cancelled.
+     * @return true if the QmfFuture has completed, failed or been cancelled.
+     */
+    public synchronized boolean isDone()
+    {
+        return _done;
+    }
+
+    /**
+     * Return the result once available, first throwing an exception if the QmfFuture did not complete successfully.
+     */
+    private T report() throws ExecutionException
+    {
+        if (_cancelled)
+        {
+            throw new CancellationException();
+        }
+        if (_exception != null)
+        {
+            throw new ExecutionException(_exception);
+        }
+        return _result;
+    }
+
+    /**
+     * Wait if necessary for the request to complete, then return its result.
+     *
+     * @return the result of the request.
+     */
+    public synchronized T get() throws InterruptedException, ExecutionException
+    {
+        while (!_done)
+        {
+            wait();
+        }
+        return report();
+    }
+
+    /**
+     * Wait if necessary for at most the given time for the request to complete, then return its result.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the time unit of the timeout argument.
+     * @return the result of the request.
+     */
+    public synchronized T get(final long timeout, final TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!_done)
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                throw new TimeoutException();
+            }
+            wait(remaining);
+        }
+        return report();
+    }
+}
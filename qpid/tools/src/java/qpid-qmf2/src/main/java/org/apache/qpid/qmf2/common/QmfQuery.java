@@ -81,6 +81,11 @@ import org.apache.qpid.messaging.util.AddressParser;
  *        ]
  * ]
  * </pre>
+ * As an extension to the QMF2 operators this implementation also supports "in", which is true if a property is
+ * equal to any one of a list of constants. For example a predicate to find the instances named "tross" or "jross":
+ * <pre>
+ * ["in" "name" ["quote" "tross"] ["quote" "jross"]]
+ * </pre>
  * <p>
  * The Expression structure is illustrated below in the context of its relationship with QmfQuery. 
  * <img alt="" src="doc-files/QmfQuery.png">
@@ -159,7 +164,7 @@ public final class QmfQuery extends QmfData
         {
             Map predicateMap = new AddressParser("{'_where': " + predicateString + "}").map();
             _predicate = (List)predicateMap.get("_where");
-            _expression = Expression.createExpression(_predicate);
+            _expression = ExpressionCache.getExpression(_predicate);
         }
         else
         {
@@ -195,7 +200,7 @@ public final class QmfQuery extends QmfData
         if (hasValue("_where"))
         {
             _predicate = (List)getValue("_where");
-            _expression = Expression.createExpression(_predicate);
+            _expression = ExpressionCache.getExpression(_predicate);
         }
     }
 
@@ -246,6 +251,17 @@ public final class QmfQuery extends QmfData
         return _predicate;
     }
 
+    /**
+     * Return the Expression created from the predicate if selector type is QmfQuery.PREDICATE.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @return the Expression created from the predicate if selector type is QmfQuery.PREDICATE, otherwise null.
+     */
+    public Expression getExpression()
+    {
+        return _expression;
+    }
+
     /**
      * Return the SchemaClassId if selector type is QmfQuery.ID
      * @return the SchemaClassId if selector type is QmfQuery.ID
@@ -0,0 +1,360 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the Expression created from a QmfQuery predicate into an equivalent Expression that is cheaper to evaluate.
+ * <p>
+ * Consoles may send predicates whose terms are in any order, so an expensive "re_match" might be evaluated for every
+ * object before a cheap and selective "eq" that would have rejected most of them. The QueryPlanner:
+ * <ul>
+ *  <li>flattens nested "and" and nested "or" Expressions, so that all the terms of a conjunction or disjunction can
+ *      be ordered together and so that the Agent's PropertyIndex sees every indexable "eq" term of a conjunction.</li>
+ *  <li>replaces an "or" of several "eq" Expressions comparing the same property with constants by an "in", which
+ *      tests the property against a HashSet of the constants and can be looked up in an Agent's PropertyIndex.</li>
+ *  <li>replaces Boolean Expressions whose operands are all constants by "true" or "false", then short-circuits
+ *      Logical Expressions containing constant terms, e.g. an "and" containing "false" becomes "false" and "true"
+ *      terms are removed from an "and".</li>
+ *  <li>orders the terms of each Logical Expression so that the cheapest and most selective terms are evaluated first,
+ *      e.g. "exists", "eq" and "in" are evaluated before numeric comparisons which are evaluated before
+ *      "re_match".</li>
+ * </ul>
+ * The planned Expression gives the same result as the original for every QmfData object, as the evaluation of
+ * an Expression has no side effects.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+public final class QueryPlanner
+{
+    /**
+     * The minimum number of "eq" terms on the same property in an "or" that are replaced by an "in".
+     */
+    private static final int MIN_IN_TERMS = 4;
+
+    /**
+     * Orders Expressions by increasing estimated cost.
+     */
+    private static final Comparator<Expression> COST_ORDER = new Comparator<Expression>()
+    {
+        public int compare(final Expression lhs, final Expression rhs)
+        {
+            int l = getCost(lhs);
+            int r = getCost(rhs);
+            return (l < r) ? -1 : ((l == r) ? 0 : 1);
+        }
+    };
+
+    /**
+     * Make constructor private as this class provides a set of static helper methods and doesn't need instantiated.
+     */
+    private QueryPlanner()
+    {
+    }
+
+    /**
+     * Return the estimated relative cost of evaluating an Expression against a QmfData object. The estimate also
+     * reflects selectivity, so "eq", which is likely to reject most objects, is ranked below "ne".
+     *
+     * @param expression the Expression to estimate the cost of.
+     * @return the estimated relative cost of evaluating the Expression.
+     */
+    public static int getCost(final Expression expression)
+    {
+        if (expression instanceof BooleanTrue || expression instanceof BooleanFalse)
+        {
+            return 0;
+        }
+        else if (expression instanceof BooleanExists)
+        {
+            return 1;
+        }
+        else if (expression instanceof BooleanEquals || expression instanceof BooleanIn)
+        {
+            return 2;
+        }
+        else if (expression instanceof BooleanNotEquals)
+        {
+            return 3;
+        }
+        else if (expression instanceof BooleanRegexMatch)
+        {
+            return 20;
+        }
+        else if (expression instanceof LogicalExpression)
+        {
+            int cost = 1;
+            for (Expression subExpression : ((LogicalExpression)expression).getSubExpressions())
+            {
+                cost = Math.min(cost + getCost(subExpression), 1000);
+            }
+            return cost;
+        }
+        return 4;
+    }
+
+    /**
+     * Return an Expression equivalent to the supplied Expression that is cheaper to evaluate.
+     *
+     * @param expression the Expression created from a QmfQuery predicate.
+     * @return the planned Expression, which may be the supplied Expression if it can't be improved.
+     */
+    public static Expression plan(final Expression expression)
+    {
+        if (expression instanceof LogicalAnd)
+        {
+            return planAnd(((LogicalAnd)expression).getSubExpressions());
+        }
+        else if (expression instanceof LogicalOr)
+        {
+            List<Expression> terms = planOr(((LogicalOr)expression).getSubExpressions());
+            if (terms == null)
+            {
+                return new BooleanTrue();
+            }
+            else if (terms.size() == 0)
+            {
+                return new BooleanFalse();
+            }
+            return (terms.size() == 1) ? terms.get(0) : new LogicalOr(toArray(terms));
+        }
+        else if (expression instanceof LogicalNot)
+        { // LogicalNot is true if none of its sub-expressions is true, in other words it's the negation of an "or".
+            List<Expression> terms = planOr(((LogicalNot)expression).getSubExpressions());
+            if (terms == null)
+            {
+                return new BooleanFalse();
+            }
+            else if (terms.size() == 0)
+            {
+                return new BooleanTrue();
+            }
+            else if (terms.size() == 1 && terms.get(0) instanceof LogicalNot)
+            { // The negation of a negation is the "or" of the inner LogicalNot's sub-expressions.
+                return plan(new LogicalOr(toArray(((LogicalNot)terms.get(0)).getSubExpressions())));
+            }
+            return new LogicalNot(toArray(terms));
+        }
+        else if (expression instanceof BooleanExpression)
+        {
+            return foldConstant((BooleanExpression)expression);
+        }
+        return expression;
+    }
+
+    /**
+     * Plan the sub-expressions of an "and", flattening nested "and" Expressions and short-circuiting constant terms.
+     *
+     * @param subExpressions the sub-expressions of the "and".
+     * @return the planned Expression.
+     */
+    private static Expression planAnd(final List<Expression> subExpressions)
+    {
+        List<Expression> terms = new ArrayList<Expression>(subExpressions.size());
+        for (Expression subExpression : subExpressions)
+        {
+            Expression term = plan(subExpression);
+            if (term instanceof BooleanFalse)
+            {
+                return term;
+            }
+            else if (term instanceof LogicalAnd)
+            {
+                terms.addAll(((LogicalAnd)term).getSubExpressions());
+            }
+            else if (!(term instanceof BooleanTrue))
+            {
+                terms.add(term);
+            }
+        }
+
+        if (terms.size() == 0)
+        {
+            return new BooleanTrue();
+        }
+        else if (terms.size() == 1)
+        {
+            return terms.get(0);
+        }
+
+        Collections.sort(terms, COST_ORDER); // N.B. Collections.sort() is stable so equal cost terms keep their order.
+        return new LogicalAnd(toArray(terms));
+    }
+
+    /**
+     * Plan the sub-expressions of an "or", flattening nested "or" Expressions and short-circuiting constant terms.
+     *
+     * @param subExpressions the sub-expressions of the "or".
+     * @return the planned terms of the "or" in cost order, or null if one of the terms is always true. The List is
+     *         empty if all of the terms are always false.
+     */
+    private static List<Expression> planOr(final List<Expression> subExpressions)
+    {
+        List<Expression> terms = new ArrayList<Expression>(subExpressions.size());
+        for (Expression subExpression : subExpressions)
+        {
+            Expression term = plan(subExpression);
+            if (term instanceof BooleanTrue)
+            {
+                return null;
+            }
+            else if (term instanceof LogicalOr)
+            {
+                terms.addAll(((LogicalOr)term).getSubExpressions());
+            }
+            else if (!(term instanceof BooleanFalse))
+            {
+                terms.add(term);
+            }
+        }
+
+        terms = mergeEquals(terms);
+        Collections.sort(terms, COST_ORDER);
+        return terms;
+    }
+
+    /**
+     * Replace the "eq" terms of an "or" that compare the same property with a constant by an "in" if there are at
+     * least MIN_IN_TERMS of them. The "in" gives the same result as the "eq" terms it replaces.
+     *
+     * @param terms the planned terms of the "or".
+     * @return the terms with "eq" terms merged into "in" terms where possible.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Expression> mergeEquals(final List<Expression> terms)
+    {
+        Map<String, List<String>> constantsByKey = new LinkedHashMap<String, List<String>>();
+        for (Expression term : terms)
+        {
+            if (term instanceof BooleanEquals)
+            {
+                BooleanEquals equals = (BooleanEquals)term;
+                for (int i = 0; i < 2; i++)
+                {
+                    String key = equals.getKey(i);
+                    String constant = equals.getConstant(1 - i);
+                    if (key != null && constant != null)
+                    {
+                        List<String> constants = constantsByKey.get(key);
+                        if (constants == null)
+                        {
+                            constants = new ArrayList<String>();
+                            constantsByKey.put(key, constants);
+                        }
+                        constants.add(constant);
+                    }
+                }
+            }
+        }
+
+        List<Expression> merged = new ArrayList<Expression>(terms.size());
+        for (Map.Entry<String, List<String>> entry : constantsByKey.entrySet())
+        {
+            List<String> constants = entry.getValue();
+            if (constants.size() >= MIN_IN_TERMS)
+            {
+                List expr = new ArrayList(constants.size() + 2);
+                expr.add("in");
+                expr.add(entry.getKey());
+                for (String constant : constants)
+                {
+                    List quote = new ArrayList(2);
+                    quote.add("quote");
+                    quote.add(constant);
+                    expr.add(quote);
+                }
+
+                try
+                {
+                    merged.add(new BooleanIn(expr));
+                }
+                catch (QmfException qmfe)
+                { // Shouldn't happen as the expr List is well formed, if it does keep the original terms.
+                    constants.clear();
+                }
+            }
+        }
+
+        if (merged.size() == 0)
+        {
+            return terms;
+        }
+
+        for (Expression term : terms)
+        {
+            if (term instanceof BooleanEquals)
+            {
+                BooleanEquals equals = (BooleanEquals)term;
+                String key = (equals.getKey(0) != null) ? equals.getKey(0) : equals.getKey(1);
+                boolean oneConstant = (equals.getConstant(0) == null) != (equals.getConstant(1) == null);
+                if (key != null && oneConstant &&
+                    constantsByKey.get(key).size() >= MIN_IN_TERMS)
+                { // This term has been merged into an "in".
+                    continue;
+                }
+            }
+            merged.add(term);
+        }
+        return merged;
+    }
+
+    /**
+     * If all of the operands of a Boolean Expression are constants its value doesn't depend on the QmfData object it
+     * is evaluated against, so replace it with "true" or "false".
+     *
+     * @param expression the Boolean Expression.
+     * @return the equivalent BooleanTrue or BooleanFalse if all of the operands are constants, otherwise expression.
+     */
+    private static Expression foldConstant(final BooleanExpression expression)
+    {
+        if (expression instanceof BooleanTrue || expression instanceof BooleanFalse)
+        {
+            return expression;
+        }
+
+        for (int i = 0; i < expression.getOperandCount(); i++)
+        {
+            if (expression.getKey(i) != null)
+            {
+                return expression;
+            }
+        }
+        return expression.evaluate(new QmfData()) ? new BooleanTrue() : new BooleanFalse();
+    }
+
+    /**
+     * Return a List of Expressions as an array.
+     *
+     * @param expressions the List of Expressions.
+     * @return an array containing the Expressions.
+     */
+    private static Expression[] toArray(final List<Expression> expressions)
+    {
+        return expressions.toArray(new Expression[expressions.size()]);
+    }
+}
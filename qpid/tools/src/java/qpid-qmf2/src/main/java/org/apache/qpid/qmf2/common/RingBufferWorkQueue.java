@@ -0,0 +1,446 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A WorkQueue backed by a preallocated ring buffer rather than a LinkedBlockingQueue.
+ * <p>
+ * For Agents and Consoles that handle tens of thousands of WorkItems per second the locks in LinkedBlockingQueue
+ * and the node it allocates for each WorkItem become measurable. This WorkQueue stores WorkItems in a fixed size
+ * array with a single producer index and a consumer index that consumers claim with compareAndSet(), so retrieving
+ * WorkItems never takes a lock and drainWorkitems() claims a whole batch in one operation.
+ * <p>
+ * WorkItems are normally added by the Console or Agent's JMS MessageListener thread, but a few (e.g. Agent
+ * timeouts) are added from other threads, so producers are serialised by a lock that is uncontended in practice.
+ * <p>
+ * Threads waiting for WorkItems, or for space when the OverflowPolicy is BLOCK, use the {@link WaitStrategy}
+ * supplied to the constructor. The COALESCE OverflowPolicy isn't supported as it needs to remove WorkItems from
+ * the middle of the queue. The ring buffer is selected when constructing a Console or Agent e.g.
+ * <pre>
+ * Console console = new Console(null, null, notifier, null,
+ *                               new RingBufferWorkQueue(65536, WorkQueue.OverflowPolicy.DROP_OLDEST,
+ *                                                       RingBufferWorkQueue.WaitStrategy.YIELD));
+ * </pre>
+ * Note that slots aren't cleared when their WorkItem is retrieved, so up to capacity retrieved WorkItems may
+ * remain reachable until they are overwritten.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+public class RingBufferWorkQueue extends WorkQueue
+{
+    /**
+     * How threads wait for the RingBufferWorkQueue to become non-empty (or non-full for producers).
+     */
+    public enum WaitStrategy
+    {
+        /**
+         * Busy spin, this has the lowest latency but occupies a CPU core for each waiting thread.
+         */
+        SPIN,
+        /**
+         * Call Thread.yield() between checks, this has low latency but still uses CPU when the queue is idle.
+         */
+        YIELD,
+        /**
+         * Park until a WorkItem (or for producers, space) becomes available. Waiting threads use no CPU, but adding
+         * a WorkItem while a consumer is waiting costs an unpark() of that consumer.
+         */
+        PARK
+    }
+
+    /**
+     * The largest supported capacity.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The preallocated ring of WorkItems, the WorkItem with sequence number s is stored at index (s &amp; _mask).
+     */
+    private final AtomicReferenceArray<WorkItem> _buffer;
+
+    /**
+     * Used to map a sequence number onto an index in the ring, the capacity is always a power of two.
+     */
+    private final int _mask;
+
+    /**
+     * The sequence number of the next WorkItem to be retrieved. Consumers claim WorkItems by advancing this.
+     */
+    private final AtomicLong _head = new AtomicLong();
+
+    /**
+     * The sequence number that the next WorkItem will be added with. WorkItems are published by advancing this.
+     */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /**
+     * Serialises producers so that the ring only ever has a single producer.
+     */
+    private final Object _producerLock = new Object();
+
+    /**
+     * How threads wait for WorkItems or space.
+     */
+    private final WaitStrategy _waitStrategy;
+
+    /**
+     * The consumers parked waiting for WorkItems, which producers unpark when they add a WorkItem.
+     */
+    private final Queue<Thread> _waitingConsumers = new ConcurrentLinkedQueue<Thread>();
+
+    /**
+     * The producer parked waiting for space, which consumers unpark when they retrieve WorkItems. As producers are
+     * serialised by _producerLock there is at most one.
+     */
+    private volatile Thread _waitingProducer = null;
+
+    /**
+     * Construct a RingBufferWorkQueue.
+     *
+     * @param capacity the maximum number of pending WorkItems, this is rounded up to a power of two.
+     * @param policy the action to take when a WorkItem is added to a full WorkQueue, COALESCE isn't supported.
+     * @param waitStrategy how threads wait for WorkItems or space, defaults to PARK if null.
+     */
+    public RingBufferWorkQueue(final int capacity, final OverflowPolicy policy, final WaitStrategy waitStrategy)
+    {
+        super(ringSize(capacity), policy, false);
+        if (getOverflowPolicy() == OverflowPolicy.COALESCE)
+        {
+            throw new IllegalArgumentException("RingBufferWorkQueue doesn't support the COALESCE OverflowPolicy");
+        }
+
+        _buffer = new AtomicReferenceArray<WorkItem>(getCapacity());
+        _mask = getCapacity() - 1;
+        _waitStrategy = (waitStrategy == null) ? WaitStrategy.PARK : waitStrategy;
+    }
+
+    /**
+     * Round the requested capacity up to a power of two.
+     *
+     * @param capacity the requested capacity.
+     * @return the capacity of the ring.
+     */
+    private static int ringSize(final int capacity)
+    {
+        if (capacity <= 0 || capacity > MAX_CAPACITY)
+        {
+            throw new IllegalArgumentException("RingBufferWorkQueue capacity must be between 1 and " + MAX_CAPACITY);
+        }
+
+        int size = 1;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Return the WaitStrategy used by threads waiting for WorkItems or space.
+     * @return the WaitStrategy used by threads waiting for WorkItems or space.
+     */
+    public WaitStrategy getWaitStrategy()
+    {
+        return _waitStrategy;
+    }
+
+    /**
+     * Return the count of pending WorkItems that can be retrieved.
+     * @return the count of pending WorkItems that can be retrieved.
+     */
+    @Override
+    public int size()
+    {
+        // Read _head first so that the difference can't be negative.
+        long head = _head.get();
+        long tail = _tail.get();
+        return (int)Math.min(tail - head, getCapacity());
+    }
+
+    /**
+     * Obtains the next pending work item - blocking version
+     *
+     * @return the next pending work item, or null if the waiting thread is interrupted.
+     */
+    @Override
+    public WorkItem getNextWorkitem()
+    {
+        WorkItem item;
+        while ((item = poll()) == null)
+        {
+            if (Thread.interrupted())
+            {
+                return null;
+            }
+            awaitWorkItem(false, 0);
+        }
+        return item;
+    }
+
+    /**
+     * Obtains the next pending work item - balking version
+     *
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately with either a WorkItem or null
+     * @return the next pending work item, or null if none available.
+     */
+    @Override
+    public WorkItem getNextWorkitem(long timeout)
+    {
+        WorkItem item = poll();
+        if (item != null || timeout <= 0)
+        {
+            return item;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        while ((item = poll()) == null)
+        {
+            if (Thread.interrupted() || System.nanoTime() - deadline >= 0)
+            {
+                return null;
+            }
+            awaitWorkItem(true, deadline);
+        }
+        return item;
+    }
+
+    /**
+     * Retrieves up to max pending WorkItems, claiming them with a single compareAndSet(), and adds them to the
+     * supplied Collection.
+     *
+     * @param items the Collection that the WorkItems are added to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @return the number of WorkItems retrieved, which is zero if none are available.
+     */
+    @Override
+    public int drainWorkitems(Collection<WorkItem> items, int max)
+    {
+        while (true)
+        {
+            long head = _head.get();
+            int count = (int)Math.min(_tail.get() - head, max);
+            if (count <= 0)
+            {
+                return 0;
+            }
+
+            // The producer can't overwrite these slots until _head has moved past them, so if the compareAndSet()
+            // succeeds the WorkItems we read are the ones we have claimed.
+            WorkItem[] batch = new WorkItem[count];
+            for (int i = 0; i < count; i++)
+            {
+                batch[i] = _buffer.get((int)(head + i) & _mask);
+            }
+
+            if (_head.compareAndSet(head, head + count))
+            {
+                signalProducer();
+                for (WorkItem item : batch)
+                {
+                    items.add(item);
+                }
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Adds a WorkItem to the WorkQueue. If the WorkQueue is full the action taken is determined by its
+     * OverflowPolicy.
+     *
+     * @param item the WorkItem passed to the WorkQueue
+     * @return true if the WorkItem was queued, false if it was discarded.
+     */
+    @Override
+    public boolean offerWorkItem(WorkItem item)
+    {
+        synchronized (_producerLock)
+        {
+            long tail = _tail.get();
+            long head;
+            while (tail - (head = _head.get()) >= getCapacity())
+            {
+                if (getOverflowPolicy() == OverflowPolicy.DROP_NEWEST)
+                {
+                    dropped(item);
+                    return false;
+                }
+                else if (getOverflowPolicy() == OverflowPolicy.DROP_OLDEST)
+                { // Claim the oldest WorkItem as a consumer would, if a consumer beats us to it we have space anyway.
+                    WorkItem oldest = _buffer.get((int)head & _mask);
+                    if (_head.compareAndSet(head, head + 1))
+                    {
+                        dropped(oldest);
+                    }
+                }
+                else
+                { // As with WorkQueue's put() we retry if interrupted, clearing the flag so PARK doesn't become a spin.
+                    Thread.interrupted();
+                    awaitSpace();
+                }
+            }
+
+            _buffer.lazySet((int)tail & _mask, item);
+            if (_waitStrategy == WaitStrategy.PARK)
+            { // A volatile write, so that a consumer that registers as waiting either sees the WorkItem or is unparked.
+                _tail.set(tail + 1);
+                signalConsumers();
+            }
+            else
+            {
+                _tail.lazySet(tail + 1);
+            }
+        }
+        updateHighWaterMark();
+        return true;
+    }
+
+    /**
+     * Retrieve the next pending WorkItem without waiting.
+     *
+     * @return the next pending WorkItem, or null if the WorkQueue is empty.
+     */
+    private WorkItem poll()
+    {
+        while (true)
+        {
+            long head = _head.get();
+            if (head >= _tail.get())
+            {
+                return null;
+            }
+
+            WorkItem item = _buffer.get((int)head & _mask);
+            if (_head.compareAndSet(head, head + 1))
+            {
+                signalProducer();
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Wait for a WorkItem to be added, as determined by the WaitStrategy, before checking the ring again. With PARK
+     * the consumer parks until a producer unparks it, so callers must allow for spurious returns.
+     *
+     * @param timed true if the wait is bounded by the deadline.
+     * @param deadline the System.nanoTime() at which a timed wait ends.
+     */
+    private void awaitWorkItem(final boolean timed, final long deadline)
+    {
+        if (_waitStrategy != WaitStrategy.PARK)
+        {
+            pause();
+            return;
+        }
+
+        Thread thread = Thread.currentThread();
+        _waitingConsumers.add(thread);
+        try
+        { // Check the ring again after registering, as a WorkItem added before then won't have unparked us.
+            if (_head.get() >= _tail.get())
+            {
+                if (timed)
+                {
+                    LockSupport.parkNanos(this, deadline - System.nanoTime());
+                }
+                else
+                {
+                    LockSupport.park(this);
+                }
+            }
+        }
+        finally
+        {
+            _waitingConsumers.remove(thread);
+        }
+    }
+
+    /**
+     * Wait for a consumer to retrieve WorkItems, as determined by the WaitStrategy, before checking the ring again.
+     * With PARK the producer parks until a consumer unparks it, so callers must allow for spurious returns.
+     */
+    private void awaitSpace()
+    {
+        if (_waitStrategy != WaitStrategy.PARK)
+        {
+            pause();
+            return;
+        }
+
+        _waitingProducer = Thread.currentThread();
+        try
+        { // Check the ring again after registering, as WorkItems retrieved before then won't have unparked us.
+            if (_tail.get() - _head.get() >= getCapacity())
+            {
+                LockSupport.park(this);
+            }
+        }
+        finally
+        {
+            _waitingProducer = null;
+        }
+    }
+
+    /**
+     * Wait briefly between checks of the ring for the SPIN and YIELD WaitStrategies.
+     */
+    private void pause()
+    {
+        if (_waitStrategy == WaitStrategy.YIELD)
+        {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Unpark the consumers waiting for WorkItems. They are all unparked, as one that has already been woken may
+     * be about to deregister without retrieving the new WorkItem.
+     */
+    private void signalConsumers()
+    {
+        for (Thread thread : _waitingConsumers)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Unpark the producer waiting for space, if there is one.
+     */
+    private void signalProducer()
+    {
+        Thread producer = _waitingProducer;
+        if (producer != null)
+        {
+            LockSupport.unpark(producer);
+        }
+    }
+}
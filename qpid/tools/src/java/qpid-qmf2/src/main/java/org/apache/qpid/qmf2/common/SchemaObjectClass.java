@@ -51,6 +51,7 @@ public final class SchemaObjectClass extends SchemaClass
     private List<SchemaMethod>   _methods = new ArrayList<SchemaMethod>();
     private List<SchemaProperty> _properties = new ArrayList<SchemaProperty>();
     private String[]             _idNames = {};
+    private String[]             _indexNames = {};
 
     /**
      * The main constructor, taking a java.util.Map as a parameter.
@@ -136,6 +137,17 @@ public final class SchemaObjectClass extends SchemaClass
         return Arrays.copyOf(_idNames, _idNames.length);
     }
 
+    /**
+     * Return the list of property names that an Agent should maintain value indexes for.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @return the list of property names that an Agent should maintain value indexes for.
+     */
+    public String[] getIndexNames()
+    {
+        return Arrays.copyOf(_indexNames, _indexNames.length);
+    }
+
     /**
      * Return the count of SchemaProperties in this instance.
      * @return the count of SchemaProperties in this instance.
@@ -296,6 +308,25 @@ public final class SchemaObjectClass extends SchemaClass
         _idNames = idNames;
     }
 
+    /**
+     * Set the list of property names that an Agent should maintain value indexes for.
+     * <p>
+     * When a SchemaObjectClass with index names is registered with an Agent the Agent indexes its QmfAgentData
+     * objects by the values of these properties, so that queries containing an "eq" predicate on one of them
+     * (either on its own or as one of the terms of an "and") can look up the matching objects directly rather than
+     * evaluating the query against every object. Index names are local to the Agent and are not sent to Consoles.
+     * <p>
+     * The index is updated when an object is added and whenever its update() (or publish()) method is called, so
+     * indexed properties are best suited to identifying properties such as "name" or "vhostRef".
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     * @param indexNames the list of property names that an Agent should maintain value indexes for.
+     */
+    public void setIndexNames(final String... indexNames)
+    {
+        _indexNames = indexNames;
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
@@ -0,0 +1,490 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Tests whether a String contains a match for a regular expression, with the same result as
+ * {@code Pattern.compile(regex).matcher(s).find()}.
+ * <p>
+ * Most of the regular expressions used to filter QMF objects, such as queue names, are plain literals, prefixes
+ * like "^foo", suffixes like "foo$" or alternations of literals like "^(foo|bar)$". When a StringMatcher is compiled
+ * such regular expressions are recognised and evaluated using String operations, or a HashSet for alternations of
+ * exact matches, which is much cheaper than running java.util.regex. Any other regular expression is evaluated
+ * using a java.util.regex Pattern. Code that already holds compiled Patterns, such as the queue name filters of the
+ * QMF2 tools, can pass them to compile(Pattern) so that the common literal and prefix filters take a fast path.
+ * <p>
+ * As with java.util.regex (without the MULTILINE flag) "$" matches at the end of the String or before a line
+ * terminator at the end of the String. StringMatcher instances are immutable and may be used by several threads.
+ * <p>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+public abstract class StringMatcher
+{
+    /**
+     * The characters that have a special meaning in a regular expression outside a character class.
+     */
+    private static final String META_CHARACTERS = "\\.[]{}()*+?^$|";
+
+    private final String _regex;
+
+    /**
+     * Construct a StringMatcher.
+     * @param regex the regular expression that this StringMatcher evaluates.
+     */
+    private StringMatcher(final String regex)
+    {
+        _regex = regex;
+    }
+
+    /**
+     * Compile a regular expression into a StringMatcher, using a String operation based fast path if possible.
+     *
+     * @param regex the regular expression.
+     * @return a StringMatcher for the regular expression.
+     * @throws PatternSyntaxException if the regular expression's syntax is invalid.
+     */
+    public static StringMatcher compile(final String regex)
+    {
+        StringMatcher matcher = compileFastPath(regex);
+        return (matcher == null) ? new RegexMatcher(Pattern.compile(regex)) : matcher;
+    }
+
+    /**
+     * Create a StringMatcher from an already compiled Pattern, using a String operation based fast path if possible.
+     * Patterns compiled with flags always use java.util.regex.
+     *
+     * @param pattern the compiled Pattern.
+     * @return a StringMatcher for the Pattern.
+     */
+    public static StringMatcher compile(final Pattern pattern)
+    {
+        StringMatcher matcher = (pattern.flags() == 0) ? compileFastPath(pattern.pattern()) : null;
+        return (matcher == null) ? new RegexMatcher(pattern) : matcher;
+    }
+
+    /**
+     * Test whether the String contains a match for the regular expression.
+     *
+     * @param s the String to test.
+     * @return true if the String contains a match for the regular expression, as Matcher.find() would.
+     */
+    public abstract boolean find(final String s);
+
+    /**
+     * Return the regular expression that this StringMatcher evaluates.
+     * @return the regular expression that this StringMatcher evaluates.
+     */
+    @Override
+    public String toString()
+    {
+        return _regex;
+    }
+
+    //                                   Regular expression analysis
+    // ********************************************************************************************************
+
+    /**
+     * Return a fast path StringMatcher for the regular expression, or null if there isn't one.
+     *
+     * @param regex the regular expression.
+     * @return a fast path StringMatcher for the regular expression, or null if there isn't one.
+     */
+    private static StringMatcher compileFastPath(final String regex)
+    {
+        boolean anchorStart = false;
+        boolean anchorEnd = false;
+        String body = regex;
+        if (regex.indexOf('(') != -1 || regex.indexOf(')') != -1)
+        { // Only handle a single group wrapping an alternation, optionally anchored, e.g. ^(foo|bar)$
+            anchorStart = body.startsWith("^");
+            body = anchorStart ? body.substring(1) : body;
+            anchorEnd = isAnchoredAtEnd(body);
+            body = anchorEnd ? body.substring(0, body.length() - 1) : body;
+
+            int start = body.startsWith("(?:") ? 3 : 1;
+            if (!body.startsWith("(") || !body.endsWith(")") || body.length() <= start)
+            {
+                return null;
+            }
+            body = body.substring(start, body.length() - 1);
+            if (body.indexOf('(') != -1 || body.indexOf(')') != -1)
+            {
+                return null;
+            }
+        }
+
+        List<String> alternatives = split(body);
+        List<StringMatcher> matchers = new ArrayList<StringMatcher>(alternatives.size());
+        boolean allExact = true;
+        for (String alternative : alternatives)
+        {
+            boolean start = anchorStart;
+            boolean end = anchorEnd;
+            if (alternative.startsWith("^"))
+            { // Anchors inside a group aren't handled, outside a group they apply to their own alternative.
+                if (start || end)
+                {
+                    return null;
+                }
+                start = true;
+                alternative = alternative.substring(1);
+            }
+            if (isAnchoredAtEnd(alternative))
+            {
+                if (anchorStart || anchorEnd)
+                {
+                    return null;
+                }
+                end = true;
+                alternative = alternative.substring(0, alternative.length() - 1);
+            }
+
+            String literal = unescape(alternative);
+            if (literal == null)
+            {
+                return null;
+            }
+            allExact = allExact && start && end;
+            matchers.add(createLiteralMatcher(regex, literal, start, end));
+        }
+
+        if (matchers.size() == 1)
+        {
+            return matchers.get(0);
+        }
+        else if (allExact)
+        {
+            Set<String> literals = new HashSet<String>();
+            for (StringMatcher matcher : matchers)
+            {
+                literals.add(((ExactMatcher)matcher)._literal);
+            }
+            return new ExactSetMatcher(regex, literals);
+        }
+        else
+        {
+            return new AlternationMatcher(regex, matchers.toArray(new StringMatcher[matchers.size()]));
+        }
+    }
+
+    /**
+     * Return true if the regular expression ends with an unescaped "$".
+     *
+     * @param regex the regular expression.
+     * @return true if the regular expression ends with an unescaped "$".
+     */
+    private static boolean isAnchoredAtEnd(final String regex)
+    {
+        if (!regex.endsWith("$"))
+        {
+            return false;
+        }
+
+        int backslashes = 0;
+        for (int i = regex.length() - 2; i >= 0 && regex.charAt(i) == '\\'; i--)
+        {
+            backslashes++;
+        }
+        return (backslashes & 1) == 0;
+    }
+
+    /**
+     * Split a regular expression into its alternatives at each unescaped "|".
+     *
+     * @param regex the regular expression.
+     * @return the alternatives of the regular expression.
+     */
+    private static List<String> split(final String regex)
+    {
+        List<String> alternatives = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < regex.length(); i++)
+        {
+            char c = regex.charAt(i);
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '|')
+            {
+                alternatives.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        alternatives.add(regex.substring(start));
+        return alternatives;
+    }
+
+    /**
+     * Return the literal String matched by a regular expression if it contains no meta characters other than escaped
+     * punctuation, otherwise return null.
+     *
+     * @param regex the regular expression.
+     * @return the literal String matched by the regular expression or null if it isn't a literal.
+     */
+    private static String unescape(final String regex)
+    {
+        StringBuilder literal = null;
+        for (int i = 0; i < regex.length(); i++)
+        {
+            char c = regex.charAt(i);
+            if (c == '\\')
+            { // Only escaped punctuation is a literal, escaped letters and digits are classes, back references etc.
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1)))
+                {
+                    return null;
+                }
+                if (literal == null)
+                {
+                    literal = new StringBuilder(regex.substring(0, i));
+                }
+                literal.append(regex.charAt(++i));
+            }
+            else if (META_CHARACTERS.indexOf(c) != -1)
+            {
+                return null;
+            }
+            else if (literal != null)
+            {
+                literal.append(c);
+            }
+        }
+        return (literal == null) ? regex : literal.toString();
+    }
+
+    /**
+     * Create a StringMatcher for a literal that is optionally anchored at the start and/or end.
+     *
+     * @param regex the regular expression being compiled.
+     * @param literal the literal String.
+     * @param anchorStart true if the literal is anchored at the start of the String.
+     * @param anchorEnd true if the literal is anchored at the end of the String.
+     * @return a StringMatcher for the literal.
+     */
+    private static StringMatcher createLiteralMatcher(final String regex, final String literal,
+                                                      final boolean anchorStart, final boolean anchorEnd)
+    {
+        if (anchorStart && anchorEnd)
+        {
+            return new ExactMatcher(regex, literal);
+        }
+        else if (anchorStart)
+        {
+            return new PrefixMatcher(regex, literal);
+        }
+        else if (anchorEnd)
+        {
+            return new SuffixMatcher(regex, literal);
+        }
+        else
+        {
+            return new ContainsMatcher(regex, literal);
+        }
+    }
+
+    /**
+     * Return the length of a String excluding a line terminator at its end, which is where "$" also matches.
+     *
+     * @param s the String.
+     * @return the length of the String excluding a line terminator at its end, or -1 if it doesn't have one.
+     */
+    private static int getLengthBeforeTerminator(final String s)
+    {
+        int length = s.length();
+        if (length == 0)
+        {
+            return -1;
+        }
+
+        char c = s.charAt(length - 1);
+        if (c == '\n')
+        {
+            return (length > 1 && s.charAt(length - 2) == '\r') ? length - 2 : length - 1;
+        }
+        return (c == '\r' || c == '\u0085' || c == 0x2028 || c == 0x2029) ? length - 1 : -1;
+    }
+
+    //                                         StringMatchers
+    // ********************************************************************************************************
+
+    /**
+     * Matches Strings that contain a literal.
+     */
+    private static final class ContainsMatcher extends StringMatcher
+    {
+        private final String _literal;
+
+        ContainsMatcher(final String regex, final String literal)
+        {
+            super(regex);
+            _literal = literal;
+        }
+
+        public boolean find(final String s)
+        {
+            return s.contains(_literal);
+        }
+    }
+
+    /**
+     * Matches Strings that start with a literal.
+     */
+    private static final class PrefixMatcher extends StringMatcher
+    {
+        private final String _literal;
+
+        PrefixMatcher(final String regex, final String literal)
+        {
+            super(regex);
+            _literal = literal;
+        }
+
+        public boolean find(final String s)
+        {
+            return s.startsWith(_literal);
+        }
+    }
+
+    /**
+     * Matches Strings that end with a literal, optionally followed by a line terminator.
+     */
+    private static final class SuffixMatcher extends StringMatcher
+    {
+        private final String _literal;
+
+        SuffixMatcher(final String regex, final String literal)
+        {
+            super(regex);
+            _literal = literal;
+        }
+
+        public boolean find(final String s)
+        {
+            if (s.endsWith(_literal))
+            {
+                return true;
+            }
+            int end = getLengthBeforeTerminator(s);
+            return end >= _literal.length() && s.regionMatches(end - _literal.length(), _literal, 0, _literal.length());
+        }
+    }
+
+    /**
+     * Matches Strings that equal a literal, optionally followed by a line terminator.
+     */
+    private static final class ExactMatcher extends StringMatcher
+    {
+        private final String _literal;
+
+        ExactMatcher(final String regex, final String literal)
+        {
+            super(regex);
+            _literal = literal;
+        }
+
+        public boolean find(final String s)
+        {
+            if (s.equals(_literal))
+            {
+                return true;
+            }
+            int end = getLengthBeforeTerminator(s);
+            return end == _literal.length() && s.startsWith(_literal);
+        }
+    }
+
+    /**
+     * Matches Strings that equal any of a Set of literals, optionally followed by a line terminator.
+     */
+    private static final class ExactSetMatcher extends StringMatcher
+    {
+        private final Set<String> _literals;
+
+        ExactSetMatcher(final String regex, final Set<String> literals)
+        {
+            super(regex);
+            _literals = literals;
+        }
+
+        public boolean find(final String s)
+        {
+            if (_literals.contains(s))
+            {
+                return true;
+            }
+            int end = getLengthBeforeTerminator(s);
+            return end >= 0 && _literals.contains(s.substring(0, end));
+        }
+    }
+
+    /**
+     * Matches Strings that are matched by any of a number of StringMatchers.
+     */
+    private static final class AlternationMatcher extends StringMatcher
+    {
+        private final StringMatcher[] _alternatives;
+
+        AlternationMatcher(final String regex, final StringMatcher[] alternatives)
+        {
+            super(regex);
+            _alternatives = alternatives;
+        }
+
+        public boolean find(final String s)
+        {
+            for (StringMatcher alternative : _alternatives)
+            {
+                if (alternative.find(s))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches Strings using a java.util.regex Pattern.
+     */
+    private static final class RegexMatcher extends StringMatcher
+    {
+        private final Pattern _pattern;
+
+        RegexMatcher(final Pattern pattern)
+        {
+            super(pattern.pattern());
+            _pattern = pattern;
+        }
+
+        public boolean find(final String s)
+        {
+            return _pattern.matcher(s).find();
+        }
+    }
+}
@@ -21,21 +21,139 @@
 package org.apache.qpid.qmf2.common;
 
 // Misc Imports
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is an implementation of a QMF2 WorkQueue. In practice this is likely to be used by an Agent or Console.
+ * <p>
+ * By default the WorkQueue is unbounded, which is the QMF2 API behaviour, but this means that an application that
+ * is slow to retrieve WorkItems (or never does so) will cause the WorkQueue to grow without limit, for example
+ * during a broker event storm. A WorkQueue may instead be created with a capacity and an {@link OverflowPolicy}
+ * that determines what happens when a WorkItem is added to a full WorkQueue, e.g.
+ * <pre>
+ * Console console = new Console(null, null, notifier, null,
+ *                               new WorkQueue(10000, WorkQueue.OverflowPolicy.DROP_OLDEST));
+ * </pre>
+ * The WorkQueue keeps counts of the WorkItems that have been dropped or coalesced and of its high-water mark so
+ * that applications can monitor how well they are keeping up.
  *
  * @author Fraser Adams
  */
 public class WorkQueue
 {
     /**
-     * Used to implement a thread safe queue of WorkItem objects
+     * The action taken when a WorkItem is added to a WorkQueue that has reached its capacity.
+     * <p>
+     * This enum is <b>not</b> part of the QMF2 API.
      */
-    private BlockingQueue<WorkItem> _workQueue = new LinkedBlockingQueue<WorkItem>();
+    public enum OverflowPolicy
+    {
+        /**
+         * Block the producer until space becomes available. N.B. the producer is usually the JMS MessageListener
+         * thread, so blocking it will also delay the delivery of responses to synchronous calls.
+         */
+        BLOCK,
+        /**
+         * Discard the oldest pending WorkItem to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new WorkItem.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard a pending WorkItem that is superseded by the new one (e.g. an earlier AGENT_HEARTBEAT for the
+         * same Agent) and enqueue the new one, or if no pending WorkItem is superseded discard the oldest.
+         */
+        COALESCE
+    }
+
+    /**
+     * Used to implement a thread safe queue of WorkItem objects, null for subclasses that store WorkItems themselves.
+     */
+    private final BlockingQueue<WorkItem> _workQueue;
+
+    /**
+     * The maximum number of pending WorkItems, Integer.MAX_VALUE if the WorkQueue is unbounded.
+     */
+    private final int _capacity;
+
+    /**
+     * The action to take when a WorkItem is added to a full WorkQueue.
+     */
+    private final OverflowPolicy _policy;
+
+    /**
+     * Serialises the producers that find the WorkQueue full so that making room and adding the new WorkItem
+     * happen together. Consumers don't take this lock.
+     */
+    private final Object _overflowLock = new Object();
+
+    /**
+     * The number of WorkItems that have been discarded by DROP_OLDEST, DROP_NEWEST or COALESCE.
+     */
+    private final AtomicLong _droppedCount = new AtomicLong();
+
+    /**
+     * The number of pending WorkItems that have been replaced by a newer WorkItem by COALESCE.
+     */
+    private final AtomicLong _coalescedCount = new AtomicLong();
+
+    /**
+     * The largest number of pending WorkItems that the WorkQueue has held.
+     */
+    private final AtomicInteger _highWaterMark = new AtomicInteger();
+
+    /**
+     * Construct an unbounded WorkQueue.
+     */
+    public WorkQueue()
+    {
+        _workQueue = new LinkedBlockingQueue<WorkItem>();
+        _capacity = Integer.MAX_VALUE;
+        _policy = OverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Construct a WorkQueue that holds at most capacity pending WorkItems.
+     * <p>
+     * This constructor is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param capacity the maximum number of pending WorkItems.
+     * @param policy the action to take when a WorkItem is added to a full WorkQueue.
+     */
+    public WorkQueue(final int capacity, final OverflowPolicy policy)
+    {
+        this(capacity, policy, true);
+    }
+
+    /**
+     * Construct a WorkQueue that holds at most capacity pending WorkItems, optionally without the LinkedBlockingQueue
+     * that normally holds them. Subclasses that store WorkItems themselves don't create it, they must then override
+     * size(), both getNextWorkitem() methods, drainWorkitems(items, max) and offerWorkItem().
+     *
+     * @param capacity the maximum number of pending WorkItems.
+     * @param policy the action to take when a WorkItem is added to a full WorkQueue.
+     * @param createQueue true to create the LinkedBlockingQueue that holds the pending WorkItems.
+     */
+    protected WorkQueue(final int capacity, final OverflowPolicy policy, final boolean createQueue)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("WorkQueue capacity must be greater than zero");
+        }
+
+        _workQueue = createQueue ? new LinkedBlockingQueue<WorkItem>(capacity) : null;
+        _capacity = capacity;
+        _policy = (policy == null) ? OverflowPolicy.BLOCK : policy;
+    }
 
     /**
      * Return the count of pending WorkItems that can be retrieved.
@@ -46,6 +164,79 @@ public class WorkQueue
         return _workQueue.size();
     }
 
+    /**
+     * Return the maximum number of pending WorkItems, Integer.MAX_VALUE if the WorkQueue is unbounded.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the maximum number of pending WorkItems.
+     */
+    public int getCapacity()
+    {
+        return _capacity;
+    }
+
+    /**
+     * Return the action taken when a WorkItem is added to a full WorkQueue.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the action taken when a WorkItem is added to a full WorkQueue.
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return _policy;
+    }
+
+    /**
+     * Return the number of WorkItems that have been discarded because the WorkQueue was full, this includes
+     * those that have been coalesced.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the number of WorkItems that have been discarded because the WorkQueue was full.
+     */
+    public long getDroppedCount()
+    {
+        return _droppedCount.get();
+    }
+
+    /**
+     * Return the number of pending WorkItems that have been replaced by a newer WorkItem that supersedes them.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the number of pending WorkItems that have been replaced by a newer WorkItem.
+     */
+    public long getCoalescedCount()
+    {
+        return _coalescedCount.get();
+    }
+
+    /**
+     * Return the largest number of pending WorkItems that the WorkQueue has held.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the largest number of pending WorkItems that the WorkQueue has held.
+     */
+    public int getHighWaterMark()
+    {
+        return _highWaterMark.get();
+    }
+
+    /**
+     * Reset the dropped, coalesced and high-water mark counters.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     */
+    public void resetCounters()
+    {
+        _droppedCount.set(0);
+        _coalescedCount.set(0);
+        _highWaterMark.set(size());
+    }
+
     /**
      * Obtains the next pending work item - blocking version
      *
@@ -82,25 +273,231 @@ public class WorkQueue
     }
 
     /**
-     * Adds a WorkItem to the WorkQueue. 
+     * Retrieves up to max pending WorkItems in a single operation and adds them to the supplied Collection. This
+     * is much cheaper than calling getNextWorkitem() for each WorkItem when WorkItems arrive in bursts.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param items the Collection that the WorkItems are added to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @return the number of WorkItems retrieved, which is zero if none are available.
+     */
+    public int drainWorkitems(Collection<WorkItem> items, int max)
+    {
+        return _workQueue.drainTo(items, max);
+    }
+
+    /**
+     * Retrieves up to max pending WorkItems in a single operation and adds them to the supplied Collection, waiting
+     * up to timeout seconds for a WorkItem to become available if none are pending.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param items the Collection that the WorkItems are added to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of WorkItems retrieved, which is zero if none became available.
+     */
+    public int drainWorkitems(Collection<WorkItem> items, int max, long timeout)
+    {
+        if (max <= 0)
+        {
+            return 0;
+        }
+
+        int count = drainWorkitems(items, max);
+        if (count == 0 && timeout > 0)
+        {
+            WorkItem item = getNextWorkitem(timeout);
+            if (item != null)
+            {
+                items.add(item);
+                count = 1 + drainWorkitems(items, max - 1);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds a WorkItem to the WorkQueue. If the WorkQueue is full the action taken is determined by its
+     * OverflowPolicy.
+     * <p>
+     * Subclasses that need to intercept every WorkItem added to the WorkQueue should override offerWorkItem(), which
+     * this method and NotifierWrapper both call. NotifierWrapper still calls addWorkItem() on subclasses that
+     * override it, but then has to notify clients of every WorkItem including those merged into pending WorkItems.
      *
      * @param item the WorkItem passed to the WorkQueue
      */
     public void addWorkItem(WorkItem item)
     {
-        // We wrap the blocking put() method in a loop "just in case" InterruptedException occurs
-        // if it does we retry the put otherwise we carry on, notify then exit.
-        while (true)
+        offerWorkItem(item);
+    }
+
+    /**
+     * Adds a WorkItem to the WorkQueue in the same way as addWorkItem(), returning whether a new WorkItem was queued.
+     * <p>
+     * The return value allows NotifierWrapper to avoid notifying clients of WorkItems that weren't queued, as any
+     * pending WorkItem they were merged into has already been notified.
+     *
+     * @param item the WorkItem passed to the WorkQueue
+     * @return true if a new WorkItem was queued, false if item was discarded or merged into a pending WorkItem.
+     */
+    public boolean offerWorkItem(WorkItem item)
+    {
+        if (_policy == OverflowPolicy.BLOCK)
+        {
+            // We wrap the blocking put() method in a loop "just in case" InterruptedException occurs
+            // if it does we retry the put otherwise we carry on, notify then exit.
+            while (true)
+            {
+                try
+                {
+                    _workQueue.put(item);
+                    break;
+                }
+                catch (InterruptedException ie)
+                {
+                    continue;
+                }
+            }
+        }
+        else if (!_workQueue.offer(item))
+        {
+            synchronized (_overflowLock)
+            {
+                if (!overflow(item))
+                {
+                    return false;
+                }
+            }
+        }
+        updateHighWaterMark();
+        return true;
+    }
+
+    /**
+     * Apply the OverflowPolicy to a WorkItem that couldn't be added because the WorkQueue was full. Consumers may
+     * be retrieving WorkItems concurrently so we retry the offer() each time round the loop.
+     *
+     * @param item the WorkItem that couldn't be added.
+     * @return true if the WorkItem was added to the WorkQueue, false if it was discarded.
+     */
+    private boolean overflow(final WorkItem item)
+    {
+        while (!_workQueue.offer(item))
         {
-            try
+            if (_policy == OverflowPolicy.DROP_NEWEST)
+            {
+                dropped(item);
+                return false;
+            }
+
+            WorkItem superseded = (_policy == OverflowPolicy.COALESCE) ? removeSuperseded(item) : null;
+            if (superseded != null)
             {
-                _workQueue.put(item);
-                break;
+                _coalescedCount.incrementAndGet();
+                dropped(superseded);
             }
-            catch (InterruptedException ie)
+            else
+            {
+                WorkItem oldest = _workQueue.poll();
+                if (oldest != null)
+                {
+                    dropped(oldest);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the oldest pending WorkItem that is superseded by the WorkItem about to be added.
+     *
+     * @param item the WorkItem about to be added.
+     * @return the superseded WorkItem that was removed, or null if none was found.
+     */
+    private WorkItem removeSuperseded(final WorkItem item)
+    {
+        Object key = getCoalescingKey(item);
+        if (key == null)
+        {
+            return null;
+        }
+
+        for (Iterator<WorkItem> i = _workQueue.iterator(); i.hasNext();)
+        {
+            WorkItem pending = i.next();
+            if (pending.getType() == item.getType() && key.equals(getCoalescingKey(pending)))
             {
-                continue;
+                i.remove();
+                return pending;
             }
         }
+        return null;
+    }
+
+    /**
+     * Count a WorkItem discarded by the OverflowPolicy then pass it to discarded(). This is protected so that
+     * subclasses that implement their own storage can maintain the WorkQueue counters.
+     *
+     * @param item the WorkItem that has been discarded.
+     */
+    protected final void dropped(final WorkItem item)
+    {
+        _droppedCount.incrementAndGet();
+        discarded(item);
+    }
+
+    /**
+     * Add to the count of dropped WorkItems, used by subclasses that merge WorkItems into a pending WorkItem to
+     * count the merged WorkItems that are lost when the OverflowPolicy discards it.
+     *
+     * @param count the number of WorkItems to add to the dropped count.
+     */
+    protected final void addDroppedCount(final long count)
+    {
+        _droppedCount.addAndGet(count);
+    }
+
+    /**
+     * Called when the OverflowPolicy discards a WorkItem, either the new WorkItem or a pending one. The default
+     * implementation does nothing, subclasses that keep state about pending WorkItems may override this to tidy up.
+     *
+     * @param item the WorkItem that has been discarded.
+     */
+    protected void discarded(final WorkItem item)
+    {
+    }
+
+    /**
+     * Return the key used by the COALESCE OverflowPolicy to identify the pending WorkItems that are superseded by a
+     * newer WorkItem of the same type with the same key. Only AGENT_HEARTBEAT WorkItems, which are superseded by
+     * a later heartbeat from the same Agent, have a key. Subclasses may override this to coalesce other WorkItems.
+     *
+     * @param item the WorkItem to return the key for.
+     * @return the key used to coalesce the WorkItem or null if the WorkItem is never superseded.
+     */
+    protected Object getCoalescingKey(final WorkItem item)
+    {
+        if (item.getType() == WorkItem.WorkItemType.AGENT_HEARTBEAT)
+        {
+            Map<String, Object> params = item.getParams();
+            return params.get("agent");
+        }
+        return null;
+    }
+
+    /**
+     * Record the current size of the WorkQueue if it is the largest seen so far. This is protected so that
+     * subclasses that implement their own storage can maintain the high-water mark.
+     */
+    protected final void updateHighWaterMark()
+    {
+        int size = size();
+        int highWaterMark = _highWaterMark.get();
+        while (size > highWaterMark && !_highWaterMark.compareAndSet(highWaterMark, size))
+        {
+            highWaterMark = _highWaterMark.get();
+        }
     }
 }
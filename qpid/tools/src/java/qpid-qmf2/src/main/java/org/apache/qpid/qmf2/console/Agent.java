@@ -33,6 +33,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfFuture;
 import org.apache.qpid.qmf2.common.SchemaClass;
 import org.apache.qpid.qmf2.common.SchemaClassId;
 
@@ -217,6 +218,25 @@ public final class Agent extends QmfData
         }
     }
 
+    /**
+     * Request that the Agent updates the value of this object's contents, asynchronously.
+     *
+     * @param objectId the ObjectId being queried for..
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that will be completed with the refreshed object.
+     */    
+    public QmfFuture<QmfConsoleData> refreshAsync(final ObjectId objectId, final int timeout)
+    {
+        if (isActive())
+        {
+            return _proxy.refreshAsync(this, objectId, timeout);
+        }
+        else
+        {
+            return QmfFuture.failed(new QmfException("Agent.refreshAsync() called from deactivated Agent"));
+        }
+    }
+
     /**
      * Helper method to create a Map containing a QMF method request.
      *
@@ -290,6 +310,29 @@ public final class Agent extends QmfData
         }
     }
 
+    /**
+     * Sends an asynchronous method request to the Agent. Delegates to the AgentProxy to actually send the method as
+     * it's the AgentProxy that knows about connections, sessions and messages.
+     *
+     * @param objectId the objectId of the remote object.
+     * @param name the remote method name.
+     * @param inArgs the formal parameters of the remote method name.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that will be completed with the MethodResult.
+     */
+    protected QmfFuture<MethodResult> invokeMethodAsync(final ObjectId objectId, final String name,
+                                                        final QmfData inArgs, final int timeout)
+    {
+        if (isActive())
+        {
+            return _proxy.invokeMethodAsync(this, createRequest(objectId, name, inArgs), timeout);
+        }
+        else
+        {
+            return QmfFuture.failed(new QmfException("Agent.invokeMethodAsync() called from deactivated Agent"));
+        }
+    }
+
     /**
      * Sends a method request to the Agent. Delegates to the AgentProxy to actually send the method as it's the
      * AgentProxy that knows about connections, sessions and messages.
@@ -330,6 +373,19 @@ public final class Agent extends QmfData
         invokeMethod(null, name, inArgs, replyHandle);
     }
 
+    /**
+     * Sends an asynchronous method request to the Agent. Delegates to the AgentProxy to actually send the method as
+     * it's the AgentProxy that knows about connections, sessions and messages.
+     *
+     * @param name the remote method name.
+     * @param inArgs the formal parameters of the remote method name.
+     * @return a QmfFuture that will be completed with the MethodResult, or failed if the method raised an exception.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final String name, final QmfData inArgs)
+    {
+        return invokeMethodAsync(null, name, inArgs, -1);
+    }
+
     /**
      * Remove a Subscription. Delegates to the AgentProxy to actually remove the Subscription as it's the AgentProxy
      * that really knows about subscriptions.
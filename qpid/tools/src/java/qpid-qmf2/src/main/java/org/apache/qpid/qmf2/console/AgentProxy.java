@@ -26,6 +26,7 @@ import java.util.Map;
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfFuture;
 
 /**
  * This interface is implemented by the Console and provides a number of "Agent" related behaviours.
@@ -75,6 +76,26 @@ public interface AgentProxy
      */
     public MethodResult invokeMethod(Agent agent, Map<String, Object> content, String replyHandle, int timeout) throws QmfException;
 
+    /**
+     * Request that the Agent update the value of an object's contents, asynchronously.
+     *
+     * @param agent the Agent to get the refresh from.
+     * @param objectId the ObjectId being queried for.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that will be completed with the refreshed object.
+     */
+    public QmfFuture<QmfConsoleData> refreshAsync(Agent agent, ObjectId objectId, int timeout);
+
+    /**
+     * Invoke the named method on the named Agent, asynchronously.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that will be completed with the MethodResult.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(Agent agent, Map<String, Object> content, int timeout);
+
     /**
      * Remove a Subscription.
      *
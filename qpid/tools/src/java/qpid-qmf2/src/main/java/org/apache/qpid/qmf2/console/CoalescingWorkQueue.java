@@ -0,0 +1,347 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.WorkItem;
+import org.apache.qpid.qmf2.common.WorkQueue;
+
+/**
+ * A Console WorkQueue that coalesces SUBSCRIPTION_INDICATION WorkItems.
+ * <p>
+ * When a Console application falls behind the WorkQueue fills with SubscriptionIndicationWorkItems carrying
+ * successive snapshots of the same objects and the application ends up processing stale states one at a time.
+ * With this WorkQueue only one SUBSCRIPTION_INDICATION per console handle is pending at any time, and a newer
+ * indication is merged into the pending one. As an Agent may push only some of an object's properties, such as just
+ * its statistics, a newer QmfConsoleData is merged property by property with the pending QmfConsoleData with the
+ * same ObjectId, the newer value of each property winning. The QmfConsoleData are delivered in the order that their
+ * objects first arrived, so an application that only needs the latest state of each object (such as QpidQueueStats)
+ * stays current under load.
+ * <p>
+ * If the OverflowPolicy discards a pending SUBSCRIPTION_INDICATION the indications that were merged into it are
+ * lost too, so they are included in the dropped count as well as the coalesced indication count.
+ * <p>
+ * Any other WorkItem is queued unchanged. Coalescing is opt-in, e.g.
+ * <pre>
+ * Console console = new Console(null, null, notifier, null, new CoalescingWorkQueue());
+ * </pre>
+ * This class is <b>not</b> part of the QMF2 API.
+ */
+public class CoalescingWorkQueue extends WorkQueue
+{
+    /**
+     * A placeholder for a SUBSCRIPTION_INDICATION that is still pending. Newer indications for the same console
+     * handle are merged into it until it is retrieved from the WorkQueue, when it is replaced by a real
+     * SubscriptionIndicationWorkItem.
+     */
+    private static final class PendingIndication extends WorkItem
+    {
+        private final String _consoleHandle;
+        private final Map<Object, QmfConsoleData> _data = new LinkedHashMap<Object, QmfConsoleData>();
+        private int _mergedCount = 0;
+
+        /**
+         * Construct a PendingIndication from the first SubscribeIndication for a console handle.
+         * @param indication the SubscribeIndication.
+         */
+        public PendingIndication(final SubscribeIndication indication)
+        {
+            super(WorkItemType.SUBSCRIPTION_INDICATION, null, null);
+            _consoleHandle = indication.getConsoleHandle();
+            add(indication.getData());
+        }
+
+        /**
+         * Merge the QmfConsoleData from a newer SubscribeIndication into this PendingIndication.
+         * @param data the QmfConsoleData from a newer SubscribeIndication.
+         */
+        public void merge(final List<QmfConsoleData> data)
+        {
+            add(data);
+            _mergedCount++;
+        }
+
+        /**
+         * Return the number of newer SubscribeIndications that have been merged into this PendingIndication.
+         * @return the number of newer SubscribeIndications that have been merged into this PendingIndication.
+         */
+        public int getMergedCount()
+        {
+            return _mergedCount;
+        }
+
+        /**
+         * Replace the pending QmfConsoleData with the same ObjectId as each of the new QmfConsoleData, appending
+         * any that aren't pending. Any property of the pending QmfConsoleData that the new one lacks is copied to
+         * it, so properties that the Agent didn't push this time aren't lost. QmfConsoleData without an ObjectId
+         * can't be coalesced so they are always appended.
+         * @param data the QmfConsoleData to add.
+         */
+        private void add(final List<QmfConsoleData> data)
+        {
+            for (QmfConsoleData record : data)
+            {
+                ObjectId id = record.getObjectId();
+                QmfConsoleData pending = (id == null) ? null : _data.get(id);
+                if (pending != null)
+                {
+                    for (Map.Entry<String, Object> entry : pending.mapEncode().entrySet())
+                    {
+                        if (!record.hasValue(entry.getKey()))
+                        {
+                            record.setValue(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                _data.put(id == null ? new Object() : id, record);
+            }
+        }
+
+        /**
+         * Return the console handle of the indications merged into this PendingIndication.
+         * @return the console handle of the indications merged into this PendingIndication.
+         */
+        public String getConsoleHandle()
+        {
+            return _consoleHandle;
+        }
+
+        /**
+         * Create the SubscriptionIndicationWorkItem that delivers the merged QmfConsoleData.
+         * @return the SubscriptionIndicationWorkItem that delivers the merged QmfConsoleData.
+         */
+        public WorkItem createWorkItem()
+        {
+            List<QmfConsoleData> data = new ArrayList<QmfConsoleData>(_data.values());
+            return new SubscriptionIndicationWorkItem(new SubscribeIndication(_consoleHandle, data));
+        }
+    }
+
+    /**
+     * The PendingIndications that are still on the WorkQueue indexed by console handle. This is also the lock
+     * that serialises merging indications with retrieving them.
+     */
+    private final Map<String, PendingIndication> _pending = new HashMap<String, PendingIndication>();
+
+    /**
+     * The number of SUBSCRIPTION_INDICATION WorkItems that have been merged into a pending one.
+     */
+    private final AtomicLong _coalescedIndicationCount = new AtomicLong();
+
+    /**
+     * Construct an unbounded CoalescingWorkQueue.
+     */
+    public CoalescingWorkQueue()
+    {
+        super();
+    }
+
+    /**
+     * Construct a CoalescingWorkQueue that holds at most capacity pending WorkItems.
+     *
+     * @param capacity the maximum number of pending WorkItems.
+     * @param policy the action to take when a WorkItem is added to a full WorkQueue.
+     */
+    public CoalescingWorkQueue(final int capacity, final OverflowPolicy policy)
+    {
+        super(capacity, policy);
+    }
+
+    /**
+     * Return the number of SUBSCRIPTION_INDICATION WorkItems that have been merged into a pending one.
+     * @return the number of SUBSCRIPTION_INDICATION WorkItems that have been merged into a pending one.
+     */
+    public long getCoalescedIndicationCount()
+    {
+        return _coalescedIndicationCount.get();
+    }
+
+    /**
+     * Obtains the next pending work item - blocking version
+     *
+     * @return the next pending work item, or null if none available.
+     */
+    @Override
+    public WorkItem getNextWorkitem()
+    {
+        return retrieved(super.getNextWorkitem());
+    }
+
+    /**
+     * Obtains the next pending work item - balking version
+     *
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately with either a WorkItem or null
+     * @return the next pending work item, or null if none available.
+     */
+    @Override
+    public WorkItem getNextWorkitem(long timeout)
+    {
+        return retrieved(super.getNextWorkitem(timeout));
+    }
+
+    /**
+     * Retrieves up to max pending WorkItems in a single operation and adds them to the supplied Collection.
+     *
+     * @param items the Collection that the WorkItems are added to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @return the number of WorkItems retrieved, which is zero if none are available.
+     */
+    @Override
+    public int drainWorkitems(Collection<WorkItem> items, int max)
+    {
+        List<WorkItem> drained = new ArrayList<WorkItem>();
+        super.drainWorkitems(drained, max);
+        return retrieved(drained, items);
+    }
+
+    /**
+     * Retrieves up to max pending WorkItems in a single operation and adds them to the supplied Collection, waiting
+     * up to timeout seconds for a WorkItem to become available if none are pending.
+     *
+     * @param items the Collection that the WorkItems are added to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of WorkItems retrieved, which is zero if none became available.
+     */
+    @Override
+    public int drainWorkitems(Collection<WorkItem> items, int max, long timeout)
+    {
+        List<WorkItem> drained = new ArrayList<WorkItem>();
+        super.drainWorkitems(drained, max, timeout);
+        return retrieved(drained, items);
+    }
+
+    /**
+     * Adds a WorkItem to the WorkQueue. A SUBSCRIPTION_INDICATION is merged into the pending SUBSCRIPTION_INDICATION
+     * with the same console handle if there is one.
+     *
+     * @param item the WorkItem passed to the WorkQueue
+     * @return true if a new WorkItem was queued, false if item was discarded or merged into a pending WorkItem.
+     */
+    @Override
+    public boolean offerWorkItem(WorkItem item)
+    {
+        if (item.getType() == WorkItem.WorkItemType.SUBSCRIPTION_INDICATION && !(item instanceof PendingIndication))
+        {
+            SubscribeIndication indication = item.getParams();
+            PendingIndication pending;
+            synchronized (_pending)
+            {
+                pending = _pending.get(indication.getConsoleHandle());
+                if (pending != null)
+                {
+                    pending.merge(indication.getData());
+                    _coalescedIndicationCount.incrementAndGet();
+                    return false;
+                }
+                pending = new PendingIndication(indication);
+                _pending.put(pending.getConsoleHandle(), pending);
+            }
+            item = pending;
+        }
+        // N.B. this is called without holding the _pending lock as the BLOCK OverflowPolicy may block here.
+        return super.offerWorkItem(item);
+    }
+
+    /**
+     * Stop merging into a PendingIndication that the OverflowPolicy has discarded and count the indications that
+     * were merged into it as dropped.
+     *
+     * @param item the WorkItem that has been discarded.
+     */
+    @Override
+    protected void discarded(final WorkItem item)
+    {
+        if (item instanceof PendingIndication)
+        {
+            PendingIndication pending = (PendingIndication)item;
+            synchronized (_pending)
+            {
+                removePending(pending);
+                addDroppedCount(pending.getMergedCount());
+            }
+        }
+    }
+
+    /**
+     * Replace a PendingIndication retrieved from the WorkQueue with a SubscriptionIndicationWorkItem. Once it has
+     * been removed from the _pending Map no more indications are merged into it.
+     *
+     * @param item the WorkItem retrieved from the WorkQueue.
+     * @return the WorkItem to pass to the application.
+     */
+    private WorkItem retrieved(final WorkItem item)
+    {
+        if (item instanceof PendingIndication)
+        {
+            PendingIndication pending = (PendingIndication)item;
+            synchronized (_pending)
+            {
+                removePending(pending);
+                return pending.createWorkItem();
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Add the WorkItems drained from the WorkQueue to the application's Collection, replacing any PendingIndications
+     * with SubscriptionIndicationWorkItems.
+     *
+     * @param drained the WorkItems drained from the WorkQueue.
+     * @param items the application's Collection.
+     * @return the number of WorkItems added to the application's Collection.
+     */
+    private int retrieved(final List<WorkItem> drained, final Collection<WorkItem> items)
+    {
+        for (WorkItem item : drained)
+        {
+            items.add(retrieved(item));
+        }
+        return drained.size();
+    }
+
+    /**
+     * Remove a PendingIndication from the _pending Map if it is still the one for its console handle.
+     *
+     * @param pending the PendingIndication to remove.
+     */
+    private void removePending(final PendingIndication pending)
+    {
+        synchronized (_pending)
+        {
+            if (_pending.get(pending.getConsoleHandle()) == pending)
+            {
+                _pending.remove(pending.getConsoleHandle());
+            }
+        }
+    }
+}
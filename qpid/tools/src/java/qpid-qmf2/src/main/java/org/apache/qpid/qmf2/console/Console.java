@@ -40,14 +40,22 @@ import org.slf4j.LoggerFactory;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.AMQPMessage;
@@ -61,6 +69,7 @@ import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfFuture;
 import org.apache.qpid.qmf2.common.QmfQuery;
 import org.apache.qpid.qmf2.common.QmfQueryTarget;
 import org.apache.qpid.qmf2.common.SchemaClass;
@@ -221,10 +230,20 @@ public final class Console implements MessageListener, AgentProxy
      */
     private Map<String, SubscriptionManager> _subscriptionById = new ConcurrentHashMap<String, SubscriptionManager>();
 
+    /**
+     * This Map is used to look up the Subscriptions with QueryTarget == OBJECT by the class name that their query
+     * targets, so that when we emulate broker Agent Subscriptions each object is only evaluated against the
+     * Subscriptions that could match it. Subscriptions whose query doesn't select a class name are stored using
+     * the empty String as the key and are evaluated against every object. The Lists are copy-on-write so that
+     * onMessage() can iterate through them without holding a lock.
+     */
+    private Map<String, List<SubscriptionManager>> _subscriptionsByClass =
+        new ConcurrentHashMap<String, List<SubscriptionManager>>();
+
     /**
      * Used to implement a thread safe queue of WorkItem objects used to implement the Notifier API
      */
-    private WorkQueue _workQueue = new WorkQueue();
+    private final WorkQueue _workQueue;
 
     /**
      * The name of the broker Agent is explicitly recorded when the broker Agent is discovered, we use this so
@@ -274,6 +293,12 @@ public final class Console implements MessageListener, AgentProxy
      */
     private boolean _subscriptionEmulationEnabled = !Boolean.getBoolean("disable_subscription_emulation");
 
+    /**
+     * If the "enable_lazy_decoding" System Property is set or enableLazyDecoding() has been called then the Maps of
+     * amqp/list encoded object responses are decoded lazily, otherwise they are decoded eagerly.
+     */
+    private volatile boolean _lazyDecoding = Boolean.getBoolean("enable_lazy_decoding");
+
     /**
      * Various timeouts used internally.
      * replyTimeout is the default maximum time we wait for synchronous responses
@@ -303,6 +328,164 @@ public final class Console implements MessageListener, AgentProxy
     private MessageProducer _broadcaster;
     private Destination     _replyAddress;
     private Destination     _asyncReplyAddress;
+    private Session         _replySession;
+
+    /**
+     * Synchronous requests that are awaiting a response, keyed by the JMSCorrelationID that the Agent echoes back.
+     * Responses arriving on _responder are routed to the matching queue by a single ResponseDispatcher, so many
+     * threads may have requests in flight at the same time rather than serialising on the Console's lock.
+     */
+    private Map<String, BlockingQueue<Message>> _pendingRequests =
+        new ConcurrentHashMap<String, BlockingQueue<Message>>();
+
+    /**
+     * Used to create JMSCorrelationIDs for synchronous requests. The prefix guards against us mistaking stale
+     * responses left on a named (non-temporary) reply queue by a previous Console instance for our own.
+     */
+    private final String _correlationPrefix = UUID.randomUUID().toString() + ":";
+    private final AtomicLong _correlationCount = new AtomicLong();
+
+    /**
+     * Asynchronous requests made via the QmfFuture based API that are awaiting a response, keyed by JMSCorrelationID.
+     * Unlike _pendingRequests these responses are handled directly on the ResponseDispatcher Thread.
+     */
+    private Map<String, AsyncRequest<?>> _asyncRequests = new ConcurrentHashMap<String, AsyncRequest<?>>();
+
+    /**
+     * Set whilst the ResponseDispatcher is handling a response. QmfFuture Listeners may be called on that Thread and
+     * a synchronous request made by one would wait for a response that only that Thread can deliver, so
+     * sendRequest() refuses such requests rather than letting them hang until they time out.
+     */
+    private final ThreadLocal<Boolean> _dispatching = new ThreadLocal<Boolean>();
+
+    /**
+     * An AsyncRequest ties a request sent via the QmfFuture based API to the QmfFuture returned to the caller.
+     * Responses are passed to onResponse() by the ResponseDispatcher and the AsyncRequest is itself a TimerTask
+     * scheduled on the Console's Timer to expire the request should the Agent fail to respond in time.
+     */
+    private abstract class AsyncRequest<T> extends TimerTask
+    {
+        protected final String _correlationId = _correlationPrefix + _correlationCount.incrementAndGet();
+        protected final QmfFuture<T> _future = new QmfFuture<T>();
+        private final String _method;
+
+        /**
+         * Construct an AsyncRequest.
+         * @param method the name of the Console method making the request, used in diagnostics.
+         */
+        AsyncRequest(final String method)
+        {
+            _method = method;
+        }
+
+        /**
+         * Handle a response to the request, completing _future once the request is complete.
+         *
+         * @param response the response Message.
+         * @return true if the request is complete, false if more responses are expected.
+         */
+        abstract boolean onResponse(Message response) throws JMSException;
+
+        /**
+         * Called if the Agent fails to respond before the timeout expires. By default this fails _future.
+         */
+        void onTimeout()
+        {
+            _future.fail(new QmfException("No response received for Console." + _method + "()"));
+        }
+
+        /**
+         * Called by the ResponseDispatcher to pass a response to the request.
+         * @param response the response Message.
+         */
+        synchronized void dispatch(final Message response)
+        {
+            // The ResponseDispatcher looks the request up before calling us, so the Timer may have expired the
+            // request (and completed _future) in between. Any late response must not touch the completed result.
+            if (_future.isDone() || !_asyncRequests.containsKey(_correlationId))
+            {
+                _log.debug("Discarding late response in {}()", _method);
+                return;
+            }
+
+            try
+            {
+                if (onResponse(response))
+                {
+                    _asyncRequests.remove(_correlationId);
+                    cancel();
+                }
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in {}()", jmse.getMessage(), _method);
+                abort(jmse.getMessage());
+            }
+        }
+
+        /**
+         * Remove the request and fail its QmfFuture, e.g. because the request could not be sent.
+         * @param reason the reason for the failure.
+         */
+        void abort(final String reason)
+        {
+            _asyncRequests.remove(_correlationId);
+            cancel();
+            _future.fail(new QmfException(reason));
+        }
+
+        /**
+         * Called by the Timer when the request times out.
+         */
+        public synchronized void run()
+        {
+            if (_asyncRequests.remove(_correlationId) != null)
+            {
+                _log.info("No response received in {}()", _method);
+                onTimeout();
+            }
+        }
+    }
+
+    /**
+     * MessageListener for the synchronous reply queue. This is the single dispatcher for all synchronous responses,
+     * it looks up the pending request using the JMSCorrelationID and hands the response to the waiting thread.
+     */
+    private final class ResponseDispatcher implements MessageListener
+    {
+        public void onMessage(final Message message)
+        {
+            _dispatching.set(Boolean.TRUE);
+            try
+            {
+                String correlationId = message.getJMSCorrelationID();
+                AsyncRequest<?> request = (correlationId == null) ? null : _asyncRequests.get(correlationId);
+                if (request != null)
+                {
+                    request.dispatch(message);
+                    return;
+                }
+
+                BlockingQueue<Message> responses = (correlationId == null) ? null : _pendingRequests.get(correlationId);
+                if (responses == null)
+                { // The requester has timed out or stopped early (e.g. streamObjects()), so nobody wants this.
+                    _log.debug("Discarding late response with correlationId {}", correlationId);
+                }
+                else
+                {
+                    responses.offer(message);
+                }
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in ResponseDispatcher.onMessage()", jmse.getMessage());
+            }
+            finally
+            {
+                _dispatching.remove();
+            }
+        }
+    }
 
     //                                  private implementation methods
     // ********************************************************************************************************
@@ -331,6 +514,135 @@ public final class Console implements MessageListener, AgentProxy
         }
     }
 
+    /**
+     * Send a request to an Agent via the QMF direct address. JMS Sessions aren't thread safe so sends are serialised,
+     * but the lock is only held for the duration of the send and not whilst waiting for any response.
+     *
+     * @param request the request Message to send.
+     */
+    private void send(final Message request) throws JMSException
+    {
+        synchronized(_requester)
+        {
+            _requester.send(request);
+        }
+    }
+
+    /**
+     * Send a synchronous request. The request is given a unique JMSCorrelationID and registered as pending so that
+     * the ResponseDispatcher can route its response(s) back to us. Callers must call completeRequest() once they
+     * have received all the responses they are interested in.
+     *
+     * @param request the request Message to send, its JMSReplyTo should be _replyAddress.
+     * @return the JMSCorrelationID used to retrieve responses via receiveResponse().
+     */
+    private String sendRequest(final Message request) throws JMSException
+    {
+        return sendRequest(request, new LinkedBlockingQueue<Message>());
+    }
+
+    /**
+     * Send a synchronous request whose response(s) will be delivered to the supplied queue. Using the same queue
+     * for several requests allows a caller to wait for the responses to all of them at the same time.
+     *
+     * @param request the request Message to send, its JMSReplyTo should be _replyAddress.
+     * @param responses the queue that the ResponseDispatcher should deliver the response(s) to.
+     * @return the JMSCorrelationID of the request, which the responses will also carry.
+     * @throws IllegalStateException if called on the ResponseDispatcher Thread, e.g. from a QmfFuture Listener.
+     */
+    private String sendRequest(final Message request, final BlockingQueue<Message> responses) throws JMSException
+    {
+        if (_dispatching.get() != null)
+        {
+            throw new IllegalStateException("Synchronous Console requests can't be made on the Thread that " +
+                                            "delivers their responses, e.g. from a QmfFuture Listener");
+        }
+
+        String correlationId = _correlationPrefix + _correlationCount.incrementAndGet();
+        request.setJMSCorrelationID(correlationId);
+        _pendingRequests.put(correlationId, responses);
+        try
+        {
+            send(request);
+        }
+        catch (JMSException jmse)
+        {
+            _pendingRequests.remove(correlationId);
+            throw jmse;
+        }
+        return correlationId;
+    }
+
+    /**
+     * Wait for the next response to a request previously sent by sendRequest().
+     *
+     * @param correlationId the JMSCorrelationID returned by sendRequest().
+     * @param timeout the maximum time to wait in milliseconds.
+     * @return the response Message, or null if no response was received before the timeout expired.
+     */
+    private Message receiveResponse(final String correlationId, final long timeout)
+    {
+        BlockingQueue<Message> responses = _pendingRequests.get(correlationId);
+        if (responses == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return responses.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Send a request made via the QmfFuture based API. The request is given the AsyncRequest's JMSCorrelationID
+     * and is directed to the synchronous reply address, where the ResponseDispatcher will pass its response(s) to
+     * the AsyncRequest. The AsyncRequest is also scheduled on the Console's Timer to fail it after the timeout.
+     *
+     * @param request the request Message to send.
+     * @param handler the AsyncRequest that will handle the response(s).
+     * @param timeout the time to wait for a reply from the Agent in seconds, a value of -1 means use the default.
+     * @return the QmfFuture that the AsyncRequest will complete.
+     */
+    private <T> QmfFuture<T> sendAsync(final Message request, final AsyncRequest<T> handler, int timeout)
+    {
+        timeout = (timeout < 1) ? _replyTimeout : timeout;
+        try
+        {
+            request.setJMSReplyTo(_replyAddress);
+            request.setJMSCorrelationID(handler._correlationId);
+            _asyncRequests.put(handler._correlationId, handler);
+            _timer.schedule(handler, timeout*1000l);
+            send(request);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in sendAsync()", jmse.getMessage());
+            handler.abort(jmse.getMessage());
+        }
+        catch (RuntimeException re)
+        { // e.g. IllegalStateException if the Timer has been cancelled, we mustn't leave the handler registered.
+            _log.info("RuntimeException {} caught in sendAsync()", re.getMessage());
+            handler.abort(re.getMessage());
+        }
+        return handler._future;
+    }
+
+    /**
+     * Remove a request from the pending request table. Any subsequent (late) responses will be discarded.
+     *
+     * @param correlationId the JMSCorrelationID returned by sendRequest().
+     */
+    private void completeRequest(final String correlationId)
+    {
+        _pendingRequests.remove(correlationId);
+    }
+
     /**
      * Check whether any of the registered Agents has expired by comparing their timestamp against the 
      * current time. We explicitly use an iterator rather than a foreach loop because if the Agent has
@@ -497,7 +809,7 @@ public final class Console implements MessageListener, AgentProxy
             {
                 if (AMQPMessage.isAMQPList(message))
                 {
-                    List<Map> list = AMQPMessage.getList(message);
+                    List<Map> list = AMQPMessage.getList(message, _lazyDecoding);
                     for (Map m : list)
                     {
                         _eventListener.onEvent(new ObjectUpdateWorkItem(handle, new QmfConsoleData(m, agent)));
@@ -530,7 +842,12 @@ public final class Console implements MessageListener, AgentProxy
                                 subscription.setSubscriptionId(subscriptionId);
                                 subscription.setDuration(params.getLifetime());
                                 String replyHandle = subscription.getReplyHandle();
-                                if (replyHandle == null)
+                                QmfFuture<SubscribeParams> future = subscription.getFuture();
+                                if (future != null)
+                                {
+                                    future.complete(new SubscribeParams(correlationId, subscription.mapEncode()));
+                                }
+                                else if (replyHandle == null)
                                 {
                                     subscription.signal();
                                 }
@@ -563,7 +880,7 @@ public final class Console implements MessageListener, AgentProxy
                     String consoleHandle = handle.getCorrelationId();
                     if (consoleHandle != null && _subscriptionByHandle.containsKey(consoleHandle))
                     { // If we have a valid consoleHandle the data has come from a "real" Subscription.
-                        List<Map> list = AMQPMessage.getList(message);
+                        List<Map> list = AMQPMessage.getList(message, _lazyDecoding);
                         List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>(list.size());
                         for (Map m : list)
                         {
@@ -575,58 +892,7 @@ public final class Console implements MessageListener, AgentProxy
                     }
                     else if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
                     { // If the data has come from is the broker Agent we emulate a Subscription on the Console
-                        for (SubscriptionManager subscription : _subscriptionByHandle.values())
-                        {
-                            QmfQuery query = subscription.getQuery();
-                            if (subscription.getAgent().getName().equals(_brokerAgentName) &&
-                                query.getTarget() == QmfQueryTarget.OBJECT)
-                            { // Only evaluate broker Agent subscriptions with QueryTarget == OBJECT on the Console.
-                                long objectEpoch = 0;
-                                consoleHandle = subscription.getConsoleHandle();
-                                List<Map> list = AMQPMessage.getList(message);
-                                List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>(list.size());
-                                for (Map m : list)
-                                { // Evaluate the QmfConsoleData object against the query
-                                    QmfConsoleData object = new QmfConsoleData(m, agent);
-                                    if (query.evaluate(object))
-                                    {
-                                        long epoch = object.getObjectId().getAgentEpoch();
-                                        objectEpoch = (epoch > objectEpoch && !object.isDeleted()) ? epoch : objectEpoch;
-                                        resultList.add(object);
-                                    }
-                                }
-
-                                if (resultList.size() > 0)
-                                {   // If there are any results available after evaluating the query we deliver them
-                                    // via a SubscribeIndicationWorkItem.
-
-                                    // Before we send the WorkItem we take a peek at the Agent Epoch value that forms
-                                    // part of the ObjectID and compare it against the current Epoch value. If they
-                                    // are different we send an AgentRestartedWorkItem. We *normally* check for Epoch
-                                    // changes when we receive heartbeat indications, but unfortunately the broker 
-                                    // ManagementAgent pushes data *before* it pushes heartbeats. Its more useful
-                                    // however for clients to know that an Agent has been restarted *before* they get
-                                    // data from the restarted Agent (in case they need to reset any state).
-                                    if (objectEpoch > agent.getEpoch())
-                                    {
-                                        agent.setEpoch(objectEpoch);
-                                        agent.clearSchemaCache(); // Clear cache to force a lookup
-                                        List<SchemaClassId> classes = getClasses(agent);
-                                        getSchema(classes, agent); // Discover the schema for this Agent and cache it
-                                        _log.info("Agent {} has been restarted", agentName);
-                                        if (_discoverAgents && (_agentQuery == null || _agentQuery.evaluate(agent)))
-                                        {
-                                            _eventListener.onEvent(new AgentRestartedWorkItem(agent));
-                                        }
-                                    }
-
-                                    _eventListener.onEvent(
-                                        new SubscriptionIndicationWorkItem(
-                                            new SubscribeIndication(consoleHandle, resultList))
-                                    );
-                                }
-                            }
-                        }
+                        emulateSubscriptions(message, agent);
                     }
                 }
                 else
@@ -663,6 +929,176 @@ public final class Console implements MessageListener, AgentProxy
         }
     } // end of onMessage() 
 
+    /**
+     * Emulate broker Agent Subscriptions with QueryTarget == OBJECT on the Console.
+     * <p>
+     * The Message is decoded once and each object is evaluated only against the Subscriptions indexed against its
+     * class name plus those whose query doesn't select a class name. The results for each Subscription are then
+     * delivered via a SubscriptionIndicationWorkItem. Note that an object matching more than one Subscription is
+     * delivered as the same QmfConsoleData instance in each SubscribeIndication.
+     *
+     * @param message the amqp/list encoded _data_indication Message received from the broker Agent.
+     * @param agent the broker Agent.
+     */
+    private void emulateSubscriptions(final Message message, final Agent agent) throws JMSException
+    {
+        if (_subscriptionsByClass.size() == 0)
+        {
+            return;
+        }
+
+        List<SubscriptionManager> unclassified = _subscriptionsByClass.get("");
+
+        long objectEpoch = 0;
+        Map<SubscriptionManager, List<QmfConsoleData>> results =
+            new LinkedHashMap<SubscriptionManager, List<QmfConsoleData>>();
+        List<Map> list = AMQPMessage.getList(message, _lazyDecoding);
+        for (Map m : list)
+        {
+            QmfConsoleData object = new QmfConsoleData(m, agent);
+            SchemaClassId classId = object.getSchemaClassId();
+            List<SubscriptionManager> classified = (classId == null) ? null :
+                                                   _subscriptionsByClass.get(classId.getClassName());
+            boolean matched = evaluateSubscriptions(classified, object, results);
+            matched = evaluateSubscriptions(unclassified, object, results) || matched;
+            if (matched)
+            {
+                long epoch = object.getObjectId().getAgentEpoch();
+                objectEpoch = (epoch > objectEpoch && !object.isDeleted()) ? epoch : objectEpoch;
+            }
+        }
+
+        if (results.size() > 0)
+        {   // If there are any results available after evaluating the queries we deliver them
+            // via SubscribeIndicationWorkItems.
+
+            // Before we send the WorkItems we take a peek at the Agent Epoch value that forms
+            // part of the ObjectID and compare it against the current Epoch value. If they
+            // are different we send an AgentRestartedWorkItem. We *normally* check for Epoch
+            // changes when we receive heartbeat indications, but unfortunately the broker 
+            // ManagementAgent pushes data *before* it pushes heartbeats. Its more useful
+            // however for clients to know that an Agent has been restarted *before* they get
+            // data from the restarted Agent (in case they need to reset any state).
+            if (objectEpoch > agent.getEpoch())
+            {
+                agent.setEpoch(objectEpoch);
+                agent.clearSchemaCache(); // Clear cache to force a lookup
+                List<SchemaClassId> classes = getClasses(agent);
+                getSchema(classes, agent); // Discover the schema for this Agent and cache it
+                _log.info("Agent {} has been restarted", agent.getName());
+                if (_discoverAgents && (_agentQuery == null || _agentQuery.evaluate(agent)))
+                {
+                    _eventListener.onEvent(new AgentRestartedWorkItem(agent));
+                }
+            }
+
+            for (Map.Entry<SubscriptionManager, List<QmfConsoleData>> entry : results.entrySet())
+            {
+                String consoleHandle = entry.getKey().getConsoleHandle();
+                _eventListener.onEvent(
+                    new SubscriptionIndicationWorkItem(new SubscribeIndication(consoleHandle, entry.getValue()))
+                );
+            }
+        }
+    }
+
+    /**
+     * Evaluate a QmfConsoleData object against a List of broker Agent Subscriptions, adding it to the results of
+     * each Subscription that it matches.
+     *
+     * @param subscriptions the Subscriptions to evaluate the object against, may be null.
+     * @param object the QmfConsoleData object being evaluated.
+     * @param results the Map of Subscription to matching objects that the results are added to.
+     * @return true if the object matched any of the Subscriptions.
+     */
+    private boolean evaluateSubscriptions(final List<SubscriptionManager> subscriptions, final QmfConsoleData object,
+                                          final Map<SubscriptionManager, List<QmfConsoleData>> results)
+    {
+        boolean matched = false;
+        if (subscriptions != null)
+        {
+            for (SubscriptionManager subscription : subscriptions)
+            {
+                if (subscription.getAgent().getName().equals(_brokerAgentName) &&
+                    subscription.getQuery().evaluate(object))
+                {
+                    List<QmfConsoleData> resultList = results.get(subscription);
+                    if (resultList == null)
+                    {
+                        resultList = new ArrayList<QmfConsoleData>();
+                        results.put(subscription, resultList);
+                    }
+                    resultList.add(object);
+                    matched = true;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Return the key used to index a Subscription in _subscriptionsByClass, which is the class name selected by
+     * an ID query or the empty String if the query doesn't select a class name.
+     *
+     * @param query the Subscription's query.
+     * @return the class name selected by the query or the empty String if the query doesn't select a class name.
+     */
+    private static String getClassKey(final QmfQuery query)
+    {
+        SchemaClassId classId = query.getSchemaClassId();
+        if (query.getPredicate() == null && query.getObjectId() == null && classId != null)
+        {
+            return classId.getClassName();
+        }
+        return "";
+    }
+
+    /**
+     * Add a Subscription with QueryTarget == OBJECT to _subscriptionsByClass.
+     *
+     * @param subscription the SubscriptionManager being added.
+     */
+    private void indexSubscription(final SubscriptionManager subscription)
+    {
+        QmfQuery query = subscription.getQuery();
+        if (query.getTarget() == QmfQueryTarget.OBJECT)
+        {
+            String key = getClassKey(query);
+            synchronized (_subscriptionsByClass)
+            {
+                List<SubscriptionManager> subscriptions = _subscriptionsByClass.get(key);
+                if (subscriptions == null)
+                {
+                    subscriptions = new CopyOnWriteArrayList<SubscriptionManager>();
+                    _subscriptionsByClass.put(key, subscriptions);
+                }
+                subscriptions.add(subscription);
+            }
+        }
+    }
+
+    /**
+     * Remove a Subscription from _subscriptionsByClass.
+     *
+     * @param subscription the SubscriptionManager being removed.
+     */
+    private void unindexSubscription(final SubscriptionManager subscription)
+    {
+        QmfQuery query = subscription.getQuery();
+        if (query.getTarget() == QmfQueryTarget.OBJECT)
+        {
+            String key = getClassKey(query);
+            synchronized (_subscriptionsByClass)
+            {
+                List<SubscriptionManager> subscriptions = _subscriptionsByClass.get(key);
+                if (subscriptions != null && subscriptions.remove(subscription) && subscriptions.size() == 0)
+                {
+                    _subscriptionsByClass.remove(key);
+                }
+            }
+        }
+    }
+
     /**
      * Retrieve the schema for a List of classes.
      * This method explicitly retrieves the schema from the remote Agent and is generally used for schema
@@ -682,6 +1118,67 @@ public final class Console implements MessageListener, AgentProxy
         return results;
     }
 
+    /**
+     * Create an OBJECT _query_request message for the specified Agent.
+     *
+     * @param agent the Agent being queried
+     * @param query the ObjectId or SchemaClassId being queried for.
+     * @param replyHandle the correlation handle used to tie asynchronous method requests with responses, if null
+     *        the request is directed to the synchronous reply address.
+     * @return the _query_request message.
+     */
+    private MapMessage createObjectQuery(final Agent agent, final QmfData query, final String replyHandle)
+        throws JMSException
+    {
+        Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
+        MapMessage request = _syncSession.createMapMessage();
+        request.setJMSReplyTo(destination);
+        request.setJMSCorrelationID(replyHandle);
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_query_request");
+        request.setStringProperty("qpid.subject", agent.getName());
+
+        // Create a QMF Query for an "OBJECT" target using either a schema ID or object ID
+        String queryType = (query instanceof SchemaClassId) ? "_schema_id" : "_object_id";
+        request.setObject("_what", "OBJECT");
+        request.setObject(queryType, query.mapEncode());
+        return request;
+    }
+
+    /**
+     * Decode the QmfConsoleData objects held in a _query_response message and add them to a results List.
+     *
+     * @param response the _query_response message received from the Agent.
+     * @param agent the Agent that sent the response.
+     * @param results the List that the decoded QmfConsoleData objects get added to.
+     * @return true if this is the last response for the query, false if the Agent has flagged it as partial.
+     */
+    private boolean addObjects(final Message response, final Agent agent, final ArrayList<QmfConsoleData> results)
+        throws JMSException
+    {
+        if (AMQPMessage.isAMQPList(response))
+        {
+            List<Map> mapResults = AMQPMessage.getList(response, _lazyDecoding);
+            results.ensureCapacity(results.size() + mapResults.size());
+            for (Map content : mapResults)
+            {
+                results.add(new QmfConsoleData(content, agent));
+            }
+        }
+        else if (AMQPMessage.isAMQPMap(response))
+        {
+            // Error responses are returned as MapMessages, though they are being ignored here.
+            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+        }
+        else
+        {
+            _log.info("getObjects() Received response message in incorrect format");
+        }
+        return !response.propertyExists("partial");
+    }
+
     /**
      * Perform a query for QmfConsoleData objects. Returns a list (possibly empty) of matching objects.
      * If replyHandle is null this method will block until the agent replies, or the timeout expires.
@@ -697,67 +1194,38 @@ public final class Console implements MessageListener, AgentProxy
     private List<QmfConsoleData> getObjects(final Agent agent, final QmfData query,
                                             final String replyHandle, int timeout)
     {
-        String agentName = agent.getName();
         timeout = (timeout < 1) ? _replyTimeout : timeout;
         List<QmfConsoleData> results = Collections.emptyList();
         try
         {
-            Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_query_request");
-            request.setStringProperty("qpid.subject", agentName);
-
-            // Create a QMF Query for an "OBJECT" target using either a schema ID or object ID
-            String queryType = (query instanceof SchemaClassId) ? "_schema_id" : "_object_id";
-            request.setObject("_what", "OBJECT");
-            request.setObject(queryType, query.mapEncode());
-
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
-            {
-                _requester.send(request);
-                if (replyHandle == null)
+            MapMessage request = createObjectQuery(agent, query, replyHandle);
+            if (replyHandle == null)
+            { // Responses are routed back to us by correlationId, so other threads may have requests in flight too.
+                String correlationId = sendRequest(request);
+                try
                 {
                     boolean lastResult = true;
                     ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
                     do
                     { // Wrap in a do/while loop to cater for the case where the Agent may send partial results.
-                        Message response = _responder.receive(timeout*1000);
+                        Message response = receiveResponse(correlationId, timeout*1000);
                         if (response == null)
                         {
                             _log.info("No response received in getObjects()");
                             return partials;
                         }
-
-                        lastResult = !response.propertyExists("partial");
-
-                        if (AMQPMessage.isAMQPList(response))
-                        {
-                            List<Map> mapResults = AMQPMessage.getList(response);
-                            partials.ensureCapacity(partials.size() + mapResults.size());
-                            for (Map content : mapResults)
-                            {
-                                partials.add(new QmfConsoleData(content, agent));
-                            }
-                        }
-                        else if (AMQPMessage.isAMQPMap(response))
-                        {
-                            // Error responses are returned as MapMessages, though they are being ignored here.
-                            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                        }
-                        else
-                        {
-                            _log.info("getObjects() Received response message in incorrect format");
-                        }
+                        lastResult = addObjects(response, agent, partials);
                     } while (!lastResult);
                     results = partials;
                 }
+                finally
+                {
+                    completeRequest(correlationId);
+                }
+            }
+            else
+            {
+                send(request);
             }
         }
         catch (JMSException jmse)
@@ -836,29 +1304,34 @@ public final class Console implements MessageListener, AgentProxy
                 request.setObject(entry.getKey(), entry.getValue());
             }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
-            {
-                _requester.send(request);
-                if (replyHandle == null)
-                { // If this is a synchronous request get the response
-                    Message response = _responder.receive(timeout*1000);
-                    if (response == null)
-                    {
-                        _log.info("No response received in invokeMethod()");
-                        throw new QmfException("No response received for Console.invokeMethod()");
-                    }
-                    MethodResult result = new MethodResult(AMQPMessage.getMap(response));
-                    QmfException exception = result.getQmfException();
-                    if (exception != null)
-                    {
-                        throw exception;
-                    }
-                    return result;
+            if (replyHandle == null)
+            { // If this is a synchronous request get the response
+                String correlationId = sendRequest(request);
+                Message response = null;
+                try
+                {
+                    response = receiveResponse(correlationId, timeout*1000);
+                }
+                finally
+                {
+                    completeRequest(correlationId);
+                }
+                if (response == null)
+                {
+                    _log.info("No response received in invokeMethod()");
+                    throw new QmfException("No response received for Console.invokeMethod()");
+                }
+                MethodResult result = new MethodResult(AMQPMessage.getMap(response));
+                QmfException exception = result.getQmfException();
+                if (exception != null)
+                {
+                    throw exception;
                 }
+                return result;
             }
+
             // If this is an asynchronous request return without waiting for a response
+            send(request);
             return null;
         }
         catch (JMSException jmse)
@@ -868,6 +1341,114 @@ public final class Console implements MessageListener, AgentProxy
         }
     }
 
+    /**
+     * Request that the Agent update the value of an object's contents, asynchronously.
+     * <p>
+     * Intended to by called by the AgentProxy. Shouldn't generally be called directly by Console applications.
+     *
+     * @param agent the Agent to get the refresh from.
+     * @param objectId the ObjectId being queried for
+     * @param timeout the time to wait for a reply from the Agent, a value of -1 means use the default timeout
+     * @return a QmfFuture that will be completed with the refreshed object, or null if it no longer exists.
+     */
+    public QmfFuture<QmfConsoleData> refreshAsync(final Agent agent, final ObjectId objectId, final int timeout)
+    {
+        final ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
+        AsyncRequest<QmfConsoleData> handler = new AsyncRequest<QmfConsoleData>("refreshAsync")
+        {
+            boolean onResponse(final Message response) throws JMSException
+            {
+                boolean lastResult = addObjects(response, agent, partials);
+                if (lastResult)
+                {
+                    completeRefresh();
+                }
+                return lastResult;
+            }
+
+            @Override
+            void onTimeout()
+            {
+                completeRefresh();
+            }
+
+            /**
+             * Complete _future with the refreshed object, or null if the Agent didn't return it.
+             */
+            private void completeRefresh()
+            {
+                _future.complete((partials.size() == 0) ? null : partials.get(0));
+            }
+        };
+
+        try
+        {
+            return sendAsync(createObjectQuery(agent, objectId, null), handler, timeout);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in refreshAsync()", jmse.getMessage());
+            return QmfFuture.failed(new QmfException(jmse.getMessage()));
+        }
+    }
+
+    /**
+     * Invoke the named method on the named Agent, asynchronously.
+     * <p>
+     * Intended to by called by the AgentProxy. Shouldn't generally be called directly by Console applications.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @param timeout the time to wait for a reply from the Agent, a value of -1 means use the default timeout
+     * @return a QmfFuture that will be completed with the MethodResult, or failed if the method raised an exception.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final Agent agent, final Map<String, Object> content,
+                                                     final int timeout)
+    {
+        if (!agent.isActive())
+        {
+            return QmfFuture.failed(new QmfException("Called invokeMethodAsync() with inactive agent"));
+        }
+
+        AsyncRequest<MethodResult> handler = new AsyncRequest<MethodResult>("invokeMethodAsync")
+        {
+            boolean onResponse(final Message response) throws JMSException
+            {
+                MethodResult result = new MethodResult(AMQPMessage.getMap(response));
+                QmfException exception = result.getQmfException();
+                if (exception == null)
+                {
+                    _future.complete(result);
+                }
+                else
+                {
+                    _future.fail(exception);
+                }
+                return true;
+            }
+        };
+
+        try
+        {
+            MapMessage request = _syncSession.createMapMessage();
+            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+            request.setStringProperty("method", "request");
+            request.setStringProperty("qmf.opcode", "_method_request");
+            request.setStringProperty("qpid.subject", agent.getName());
+
+            for (Map.Entry<String, Object> entry : content.entrySet())
+            {
+                request.setObject(entry.getKey(), entry.getValue());
+            }
+            return sendAsync(request, handler, timeout);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in invokeMethodAsync()", jmse.getMessage());
+            return QmfFuture.failed(new QmfException(jmse.getMessage()));
+        }
+    }
+
     /**
      * Remove a Subscription.
      *
@@ -877,9 +1458,9 @@ public final class Console implements MessageListener, AgentProxy
     {
         String consoleHandle = subscription.getConsoleHandle();
         String subscriptionId = subscription.getSubscriptionId();
-        if (consoleHandle != null)
+        if (consoleHandle != null && _subscriptionByHandle.remove(consoleHandle) != null)
         {
-            _subscriptionByHandle.remove(consoleHandle);
+            unindexSubscription(subscription);
         }
         if (subscriptionId != null)
         {
@@ -948,6 +1529,31 @@ public final class Console implements MessageListener, AgentProxy
     public Console(String name, final String domain,
                    final QmfCallback notifier, final String options) throws QmfException
     {
+        this(name, domain, notifier, options, new WorkQueue());
+    }
+
+    /**
+     * Creates a Console that uses the supplied WorkQueue, but does NOT start it, that requires us to do
+     * addConnection(). This allows applications to supply a bounded WorkQueue so that the number of pending
+     * WorkItems is limited if the application falls behind.
+     * <p>
+     * This constructor is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param name if no name is supplied we synthesise one, see the main constructor.
+     * @param domain the QMF "domain", if not supplied, the value of the domain defaults to "default".
+     * @param notifier this may be either a QMF2 API Notifier object OR a QMFEventListener.
+     * @param options a String representation of a Map containing the options, see the main constructor.
+     * @param workQueue the WorkQueue that WorkItems are added to when notifier is a Notifier.
+     */
+    public Console(String name, final String domain, final QmfCallback notifier,
+                   final String options, final WorkQueue workQueue) throws QmfException
+    {
+        if (workQueue == null)
+        {
+            throw new QmfException("Console WorkQueue must not be null");
+        }
+        _workQueue = workQueue;
+
         if (name == null)
         {
             // ManagementFactory.getRuntimeMXBean().getName()) returns the name representing the running virtual machine.
@@ -1119,9 +1725,12 @@ public final class Console implements MessageListener, AgentProxy
                 Destination directAddress = _syncSession.createQueue("qmf." + _domain + ".direct");
                 _requester = _syncSession.createProducer(directAddress);
 
-                // Create the JMSReplyTo _replyAddress and MessageConsumer
+                // Create the JMSReplyTo _replyAddress and MessageConsumer. The _responder has its own Session as
+                // the ResponseDispatcher delivers responses asynchronously whilst other threads send on _syncSession.
                 _replyAddress = _syncSession.createQueue(_address + syncReplyAddressOptions);
-                _responder = _syncSession.createConsumer(_replyAddress);
+                _replySession = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                _responder = _replySession.createConsumer(_replyAddress);
+                _responder.setMessageListener(new ResponseDispatcher());
 
                 _connection.start();
 
@@ -1191,6 +1800,12 @@ public final class Console implements MessageListener, AgentProxy
             throw new QmfException("Attempt to delete unknown connection");
         }
 
+        // The Timer that would otherwise expire them is about to be cancelled so fail any outstanding QmfFutures.
+        for (AsyncRequest<?> request : _asyncRequests.values())
+        {
+            request.abort("Connection removed");
+        }
+
         try
         {
             _timer.cancel();
@@ -1339,6 +1954,22 @@ public final class Console implements MessageListener, AgentProxy
         _disableEvents = true;
     }
 
+    /**
+     * Called to enable lazy decoding of the objects returned by getObjects(), queryObjects(), streamObjects(),
+     * refresh() and Subscriptions. Each object's property Map is then only decoded from the response message when
+     * it is first accessed, which saves work for Consoles that only look at a few properties of large result sets
+     * but retains each response's encoded form for as long as any of its objects are referenced.
+     * <p>
+     * Note that objects are decoded eagerly by default, lazy decoding may also be enabled by setting the
+     * "enable_lazy_decoding" System Property to true.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     */
+    public void enableLazyDecoding()
+    {
+        _lazyDecoding = true;
+    }
+
     /**
      * Return the count of pending WorkItems that can be retrieved.
      * @return the count of pending WorkItems that can be retrieved.
@@ -1348,6 +1979,19 @@ public final class Console implements MessageListener, AgentProxy
         return _workQueue.size();
     }
 
+    /**
+     * Return the WorkQueue used by this Console, this allows applications to retrieve the WorkQueue's dropped
+     * WorkItem count and high-water mark.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @return the WorkQueue used by this Console.
+     */
+    public WorkQueue getWorkQueue()
+    {
+        return _workQueue;
+    }
+
     /**
      * Obtains the next pending work item - blocking version.
      * <p>
@@ -1402,6 +2046,53 @@ public final class Console implements MessageListener, AgentProxy
         return _workQueue.getNextWorkitem(timeout);
     }
 
+    /**
+     * Retrieves up to max pending work items in a single operation - balking version.
+     * <p>
+     * This is a cheaper alternative to calling getNextWorkitem(0) for each pending work item, so applications
+     * that receive WorkItems in bursts can process them in batches e.g. the following usage pattern.
+     * <pre>
+     *   List&lt;WorkItem&gt; batch = new ArrayList&lt;WorkItem&gt;();
+     *   while (true)
+     *   {
+     *       notifier.waitForWorkItem(); // Assuming a BlockingNotifier has been used here
+     *       while (console.drainWorkitems(batch, 100) &gt; 0)
+     *       {
+     *           for (WorkItem wi : batch)
+     *           {
+     *               System.out.println("WorkItem type: " + wi.getType());
+     *           }
+     *           batch.clear();
+     *       }
+     *   }
+     * </pre>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param items the Collection that the work items are added to.
+     * @param max the maximum number of work items to retrieve.
+     * @return the number of work items retrieved, which is zero if none are available.
+     */
+    public int drainWorkitems(final Collection<WorkItem> items, final int max)
+    {
+        return _workQueue.drainWorkitems(items, max);
+    }
+
+    /**
+     * Retrieves up to max pending work items in a single operation, waiting up to timeout seconds for a work item
+     * to become available if none are pending.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param items the Collection that the work items are added to.
+     * @param max the maximum number of work items to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of work items retrieved, which is zero if none became available.
+     */
+    public int drainWorkitems(final Collection<WorkItem> items, final int max, final long timeout)
+    {
+        return _workQueue.drainWorkitems(items, max, timeout);
+    }
+
     /**
      * Releases a WorkItem instance obtained by getNextWorkItem(). Called when the application has finished
      * processing the WorkItem.
@@ -1540,12 +2231,10 @@ public final class Console implements MessageListener, AgentProxy
 
             // Create a QMF Query for an "SCHEMA_ID" target
             request.setObject("_what", "SCHEMA_ID");
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this) 
+            String correlationId = sendRequest(request);
+            try
             {
-                _requester.send(request);
-                Message response = _responder.receive(_replyTimeout*1000);
+                Message response = receiveResponse(correlationId, _replyTimeout*1000);
                 if (response == null)
                 {
                     _log.info("No response received in getClasses()");
@@ -1573,6 +2262,10 @@ public final class Console implements MessageListener, AgentProxy
                     _log.info("getClasses() Received response message in incorrect format");
                 }
             }
+            finally
+            {
+                completeRequest(correlationId);
+            }
         }
         catch (JMSException jmse)
         {
@@ -1604,85 +2297,154 @@ public final class Console implements MessageListener, AgentProxy
     }
 
     /**
-     * Return a list of all available class SchemaClass from a specified Agent.
+     * Return a list of all available class SchemaClass from a specified Agent.
+     * <p>
+     * This call will return cached information if it is available.  If not, it will send a query message
+     * to the remote agent and block waiting for a response. The timeout argument specifies the maximum time
+     * to wait for a response from the agent.
+     *
+     * @param schemaClassId the SchemaClassId we wish to return schema information for.
+     * @param agent the Agent we want to retrieve the schema from
+     */
+    public List<SchemaClass> getSchema(final SchemaClassId schemaClassId, final Agent agent)
+    {
+        // First look to see if there are cached results and if there are return those.
+        List<SchemaClass> results = agent.getSchema(schemaClassId);
+        if (results.size() > 0)
+        {
+            return results;
+        }
+
+        results = new ArrayList<SchemaClass>();
+        try
+        {
+            String correlationId = sendRequest(createSchemaQuery(schemaClassId, agent));
+            try
+            {
+                Message response = receiveResponse(correlationId, _replyTimeout*1000);
+                if (response == null)
+                {
+                    _log.info("No response received in getSchema()");
+                    return Collections.emptyList();
+                }
+                addSchema(response, results);
+            }
+            finally
+            {
+                completeRequest(correlationId);
+            }
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in getSchema()", jmse.getMessage());
+        }
+        agent.setSchema(schemaClassId, results);
+        return results;
+    }
+
+    /**
+     * Return a list of all available class SchemaClass from a specified Agent, asynchronously.
      * <p>
-     * This call will return cached information if it is available.  If not, it will send a query message
-     * to the remote agent and block waiting for a response. The timeout argument specifies the maximum time
-     * to wait for a response from the agent.
+     * This method is <b>not</b> an official method specified in the QMF2 API. If there is cached information
+     * available the returned QmfFuture will already be complete, otherwise it is completed when the Agent
+     * responds. If the Agent fails to respond in time the QmfFuture completes with an empty list, mirroring
+     * the behaviour of the blocking getSchema().
      *
      * @param schemaClassId the SchemaClassId we wish to return schema information for.
      * @param agent the Agent we want to retrieve the schema from
+     * @return a QmfFuture that will be completed with the List of SchemaClass.
      */
-    public List<SchemaClass> getSchema(final SchemaClassId schemaClassId, final Agent agent)
+    public QmfFuture<List<SchemaClass>> getSchemaAsync(final SchemaClassId schemaClassId, final Agent agent)
     {
         // First look to see if there are cached results and if there are return those.
-        List<SchemaClass> results = agent.getSchema(schemaClassId);
-        if (results.size() > 0)
+        List<SchemaClass> cached = agent.getSchema(schemaClassId);
+        if (cached.size() > 0)
         {
-            return results;
+            return QmfFuture.completed(cached);
         }
 
-        String agentName = agent.getName();
-//System.out.println("getSchema for agent " + agentName);
-        results = new ArrayList<SchemaClass>();
+        AsyncRequest<List<SchemaClass>> handler = new AsyncRequest<List<SchemaClass>>("getSchemaAsync")
+        {
+            boolean onResponse(final Message response) throws JMSException
+            {
+                List<SchemaClass> results = new ArrayList<SchemaClass>();
+                addSchema(response, results);
+                agent.setSchema(schemaClassId, results);
+                _future.complete(results);
+                return true;
+            }
+
+            @Override
+            void onTimeout()
+            {
+                _future.complete(Collections.<SchemaClass>emptyList());
+            }
+        };
+
         try
         {
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(_replyAddress);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_query_request");
-            request.setStringProperty("qpid.subject", agentName);
+            return sendAsync(createSchemaQuery(schemaClassId, agent), handler, -1);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in getSchemaAsync()", jmse.getMessage());
+            return QmfFuture.failed(new QmfException(jmse.getMessage()));
+        }
+    }
 
-            // Create a QMF Query for an "SCHEMA" target
-            request.setObject("_what", "SCHEMA");
-            request.setObject("_schema_id", schemaClassId.mapEncode());
+    /**
+     * Create a SCHEMA _query_request message for the specified Agent.
+     *
+     * @param schemaClassId the SchemaClassId we wish to return schema information for.
+     * @param agent the Agent we want to retrieve the schema from
+     * @return the _query_request message.
+     */
+    private MapMessage createSchemaQuery(final SchemaClassId schemaClassId, final Agent agent) throws JMSException
+    {
+        MapMessage request = _syncSession.createMapMessage();
+        request.setJMSReplyTo(_replyAddress);
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_query_request");
+        request.setStringProperty("qpid.subject", agent.getName());
+
+        // Create a QMF Query for an "SCHEMA" target
+        request.setObject("_what", "SCHEMA");
+        request.setObject("_schema_id", schemaClassId.mapEncode());
+        return request;
+    }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
+    /**
+     * Decode the SchemaClass objects held in a SCHEMA _query_response message and add them to a results List.
+     *
+     * @param response the _query_response message received from the Agent.
+     * @param results the List that the decoded SchemaClass objects get added to.
+     */
+    private void addSchema(final Message response, final List<SchemaClass> results) throws JMSException
+    {
+        if (AMQPMessage.isAMQPList(response))
+        {
+            List<Map> mapResults = AMQPMessage.getList(response);
+            for (Map content : mapResults)
             {
-                _requester.send(request);
-                Message response = _responder.receive(_replyTimeout*1000);
-                if (response == null)
-                {
-                    _log.info("No response received in getSchema()");
-                    return Collections.emptyList();
-                }
-
-                if (AMQPMessage.isAMQPList(response))
-                {
-                    List<Map> mapResults = AMQPMessage.getList(response);
-                    for (Map content : mapResults)
-                    {
-                        SchemaClass schema = new SchemaObjectClass(content);
-                        if (schema.getClassId().getType().equals("_event"))
-                        {
-                            schema = new SchemaEventClass(content);
-                        }
-//schema.listValues();
-                        results.add(schema);
-                    }
-                }
-                else if (AMQPMessage.isAMQPMap(response))
-                {
-                    // Error responses are returned as MapMessages, though they are being ignored here.
-                    //System.out.println("Console.getSchema() no results for " + agentName);
-                    //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                    //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                }
-                else
+                SchemaClass schema = new SchemaObjectClass(content);
+                if (schema.getClassId().getType().equals("_event"))
                 {
-                    _log.info("getSchema() Received response message in incorrect format");
+                    schema = new SchemaEventClass(content);
                 }
+                results.add(schema);
             }
         }
-        catch (JMSException jmse)
+        else if (AMQPMessage.isAMQPMap(response))
         {
-            _log.info("JMSException {} caught in getSchema()", jmse.getMessage());
+            // Error responses are returned as MapMessages, though they are being ignored here.
+            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+        }
+        else
+        {
+            _log.info("getSchema() Received response message in incorrect format");
         }
-        agent.setSchema(schemaClassId, results);
-        return results;
     }
 
     /**
@@ -1855,12 +2617,195 @@ public final class Console implements MessageListener, AgentProxy
      */
     public List<QmfConsoleData> getObjects(final QmfData query, final int timeout, final List<Agent> agentList)
     {
-        List<QmfConsoleData> results = new ArrayList<QmfConsoleData>();
-        for (Agent agent : agentList)
+        return queryObjects(query, timeout, agentList).getData();
+    }
+
+    /**
+     * Perform a blocking query for QmfConsoleData objects across a number of Agents.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API. The query is sent to every Agent in
+     * agentList at once and the replies are then gathered concurrently, so the timeout is shared by all of the
+     * Agents rather than applied to each in turn. Once the timeout expires all data retrieved to date is returned
+     * together with the list of Agents that did not reply in time.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param timeout overrides the default replyTimeout.
+     * @param agentList the Agents that the query is sent to.
+     * @return a QueryResult holding the QMF Objects received and the Agents that timed out.
+     */
+    public QueryResult queryObjects(final QmfData query, int timeout, final List<Agent> agentList)
+    {
+        timeout = (timeout < 1) ? _replyTimeout : timeout;
+        ArrayList<QmfConsoleData> results = new ArrayList<QmfConsoleData>();
+        List<Agent> timedOutAgents = new ArrayList<Agent>();
+
+        // All responses are delivered to the same queue, we use the correlationId to tell which Agent sent them.
+        BlockingQueue<Message> responses = new LinkedBlockingQueue<Message>();
+        Map<String, Agent> outstanding = new HashMap<String, Agent>(agentList.size());
+        try
+        {
+            for (Agent agent : agentList)
+            {
+                try
+                {
+                    outstanding.put(sendRequest(createObjectQuery(agent, query, null), responses), agent);
+                }
+                catch (JMSException jmse)
+                {
+                    _log.info("JMSException {} caught in queryObjects()", jmse.getMessage());
+                    timedOutAgents.add(agent);
+                }
+            }
+
+            long deadline = System.currentTimeMillis() + timeout*1000l;
+            while (outstanding.size() > 0)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                Message response = (remaining > 0) ? responses.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (response == null)
+                {
+                    _log.info("No response received from {} Agents in queryObjects()", outstanding.size());
+                    break;
+                }
+
+                try
+                {
+                    String correlationId = response.getJMSCorrelationID();
+                    Agent agent = outstanding.get(correlationId);
+                    if (agent != null && addObjects(response, agent, results))
+                    { // We've received the last response from this Agent.
+                        outstanding.remove(correlationId);
+                        completeRequest(correlationId);
+                    }
+                }
+                catch (JMSException jmse)
+                {
+                    _log.info("JMSException {} caught in queryObjects()", jmse.getMessage());
+                }
+            }
+        }
+        catch (InterruptedException ie)
         {
-            results.addAll(getObjects(agent, query, null, timeout));
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            for (String correlationId : outstanding.keySet())
+            {
+                completeRequest(correlationId);
+            }
+        }
+
+        timedOutAgents.addAll(outstanding.values());
+        return new QueryResult(results, timedOutAgents);
+    }
+
+    /**
+     * Perform a blocking, streaming query for QmfConsoleData objects on the specified Agent.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API. Rather than accumulating every
+     * (possibly partial) response into a single List, each response is decoded as it arrives and passed to the
+     * listener, which may stop the query early by returning false. This avoids holding the decoded objects for
+     * the whole result set at once and lets the caller start work on the first batch as soon as it arrives.
+     * <p>
+     * Note that there is no back-pressure on the Agent: responses that arrive faster than the listener consumes
+     * them are held, still encoded, on an unbounded per-request queue, so a slow listener still needs memory for
+     * the undelivered responses. The queue isn't bounded because that would block the single ResponseDispatcher,
+     * stalling every other synchronous request (including any made by the listener itself). If the listener stops
+     * the query early the request is discarded and any later responses are quietly dropped.
+     * <p>
+     * The timeout is applied to the wait for each individual response.
+     *
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param timeout overrides the default replyTimeout, a value of -1 means use the default timeout.
+     * @param listener the ObjectBatchListener that each batch of results is passed to.
+     * @return true if all of the results were delivered, false if the query timed out or was stopped by the listener.
+     */
+    public boolean streamObjects(final Agent agent, final QmfData query, int timeout,
+                                 final ObjectBatchListener listener)
+    {
+        timeout = (timeout < 1) ? _replyTimeout : timeout;
+        try
+        {
+            String correlationId = sendRequest(createObjectQuery(agent, query, null));
+            try
+            {
+                boolean lastResult = false;
+                while (!lastResult)
+                {
+                    Message response = receiveResponse(correlationId, timeout*1000);
+                    if (response == null)
+                    {
+                        _log.info("No response received in streamObjects()");
+                        return false;
+                    }
+
+                    ArrayList<QmfConsoleData> batch = new ArrayList<QmfConsoleData>();
+                    lastResult = addObjects(response, agent, batch);
+                    if (batch.size() > 0 && !listener.onBatch(batch))
+                    {
+                        return lastResult;
+                    }
+                }
+                return true;
+            }
+            finally
+            { // Discards any responses that we haven't consumed if the listener stopped the query early.
+                completeRequest(correlationId);
+            }
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in streamObjects()", jmse.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Perform an asynchronous query for QmfConsoleData objects on the specified Agent.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API. The returned QmfFuture is completed
+     * with a list (possibly empty) of matching objects once the Agent has sent all of its (possibly partial)
+     * results. If the timeout expires first the QmfFuture is completed with all data retrieved to date, mirroring
+     * the behaviour of the blocking getObjects().
+     *
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param timeout overrides the default replyTimeout, a value of -1 means use the default timeout.
+     * @return a QmfFuture that will be completed with a List of QMF Objects describing that class.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final Agent agent, final QmfData query, final int timeout)
+    {
+        final ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
+        AsyncRequest<List<QmfConsoleData>> handler = new AsyncRequest<List<QmfConsoleData>>("getObjectsAsync")
+        {
+            boolean onResponse(final Message response) throws JMSException
+            { // The Agent may send partial results so we only complete the QmfFuture on receipt of the last one.
+                boolean lastResult = addObjects(response, agent, partials);
+                if (lastResult)
+                {
+                    _future.complete(new ArrayList<QmfConsoleData>(partials));
+                }
+                return lastResult;
+            }
+
+            @Override
+            void onTimeout()
+            { // Complete with a copy so that the caller's List can't change if a late response slips through.
+                _future.complete(new ArrayList<QmfConsoleData>(partials));
+            }
+        };
+
+        try
+        {
+            return sendAsync(createObjectQuery(agent, query, null), handler, timeout);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in getObjectsAsync()", jmse.getMessage());
+            return QmfFuture.failed(new QmfException(jmse.getMessage()));
         }
-        return results;
     }
 
     /**
@@ -1915,8 +2860,57 @@ public final class Console implements MessageListener, AgentProxy
      *        <b>timeout</b> the time to wait for a reply from the Agent.
      * </pre>
      */
-    public synchronized SubscribeParams createSubscription(final Agent agent, final QmfQuery query,
-                                                final String consoleHandle, final String options) throws QmfException
+    public SubscribeParams createSubscription(final Agent agent, final QmfQuery query,
+                                              final String consoleHandle, final String options) throws QmfException
+    {
+        return createSubscription(agent, query, consoleHandle, options, null);
+    }
+
+    /**
+     * Creates a subscription to the agent using the given Query, asynchronously.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API. It behaves like createSubscription()
+     * but rather than blocking, or delivering the result as a SUBSCRIBE_RESPONSE WorkItem, the returned QmfFuture
+     * is completed with the SubscribeParams once the Agent responds. If the Agent fails to respond in time the
+     * QmfFuture is failed and the Subscription is cancelled. Any replyHandle option is ignored.
+     *
+     * @param agent the Agent on which to create the subscription.
+     * @param query the Query to perform on the Agent
+     * @param consoleHandle an application-provided handle that will accompany each subscription update sent
+     *        from the Agent.
+     * @param options a String representation of a Map containing the options as described in createSubscription().
+     * @return a QmfFuture that will be completed with the SubscribeParams describing the new Subscription.
+     */
+    public QmfFuture<SubscribeParams> createSubscriptionAsync(final Agent agent, final QmfQuery query,
+                                                              final String consoleHandle, final String options)
+    {
+        QmfFuture<SubscribeParams> future = new QmfFuture<SubscribeParams>();
+        try
+        {
+            createSubscription(agent, query, consoleHandle, options, future);
+        }
+        catch (QmfException qmfe)
+        {
+            future.fail(qmfe);
+        }
+        return future;
+    }
+
+    /**
+     * Creates a subscription to the agent using the given Query. This is the implementation behind both
+     * createSubscription() and createSubscriptionAsync().
+     *
+     * @param agent the Agent on which to create the subscription.
+     * @param query the Query to perform on the Agent
+     * @param consoleHandle an application-provided handle that will accompany each subscription update sent
+     *        from the Agent.
+     * @param options a String representation of a Map containing the options as described in createSubscription().
+     * @param future if non-null this QmfFuture is completed with the result rather than the result being returned.
+     */
+    private synchronized SubscribeParams createSubscription(final Agent agent, final QmfQuery query,
+                                                            final String consoleHandle, final String options,
+                                                            final QmfFuture<SubscribeParams> future)
+        throws QmfException
     {
         if (consoleHandle == null)
         {
@@ -1961,7 +2955,7 @@ public final class Console implements MessageListener, AgentProxy
                 timeout = optMap.getLongValue("timeout");
             }
 
-            if (optMap.hasValue("replyHandle"))
+            if (optMap.hasValue("replyHandle") && future == null)
             {
                 replyHandle = optMap.getStringValue("replyHandle");
             }
@@ -1981,9 +2975,11 @@ public final class Console implements MessageListener, AgentProxy
             request.setObject("_interval", publishInterval);
             request.setObject("_duration", lifetime);
 
-            SubscriptionManager subscription =
+            final SubscriptionManager subscription =
                 new SubscriptionManager(agent, query, consoleHandle, replyHandle, publishInterval, lifetime);
+            subscription.setFuture(future);
             _subscriptionByHandle.put(consoleHandle, subscription);
+            indexSubscription(subscription);
             _timer.schedule(subscription, 0, publishInterval);
 
             if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
@@ -1992,7 +2988,11 @@ public final class Console implements MessageListener, AgentProxy
                 _subscriptionById.put(subscriptionId, subscription);
                 subscription.setSubscriptionId(subscriptionId);
                 final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
-                if (replyHandle == null)
+                if (future != null)
+                {
+                    future.complete(params);
+                }
+                else if (replyHandle == null)
                 {
                     return params;
                 }
@@ -2011,8 +3011,25 @@ public final class Console implements MessageListener, AgentProxy
                 return null;
             }
 
-            _requester.send(request);
-            if (replyHandle == null)
+            send(request);
+            if (future != null)
+            { // The QmfFuture is completed by onMessage(), but we need to fail it if the Agent doesn't respond.
+                _timer.schedule(new TimerTask()
+                {
+                    public void run()
+                    {
+                        // Only cancel the Subscription if we failed the QmfFuture, a response may have completed it
+                        // since this task started.
+                        if (future.fail(new QmfException("No response received for Console.createSubscription()")))
+                        {
+                            _log.info("No response received in createSubscriptionAsync()");
+                            subscription.cancel();
+                        }
+                    }
+                }, timeout*1000);
+                return null;
+            }
+            else if (replyHandle == null)
             { // If this is an synchronous request get the response
                 subscription.await(timeout*1000);
                 if (subscription.getSubscriptionId() == null)
@@ -2126,58 +3143,63 @@ public final class Console implements MessageListener, AgentProxy
                 request.setObject("_duration", lifetime);
             }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
-            {
-                if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
-                { // If the Agent is the broker Agent we emulate the Subscription on the Console
-                    subscription.refresh();
-                    final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
-                    if (replyHandle == null)
-                    {
-                        return params;
-                    }
-                    else
+            if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
+            { // If the Agent is the broker Agent we emulate the Subscription on the Console
+                subscription.refresh();
+                final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
+                if (replyHandle == null)
+                {
+                    return params;
+                }
+                else
+                {
+                    final String handle = replyHandle;
+                    Thread thread = new Thread()
                     {
-                        final String handle = replyHandle;
-                        Thread thread = new Thread()
+                        public void run()
                         {
-                            public void run()
-                            {
-                                _eventListener.onEvent(new SubscribeResponseWorkItem(new Handle(handle), params));
-                            }
-                        };
-                        thread.start();
-                    }
-                    return null;
+                            _eventListener.onEvent(new SubscribeResponseWorkItem(new Handle(handle), params));
+                        }
+                    };
+                    thread.start();
                 }
+                return null;
+            }
 
-                _requester.send(request);
-                if (replyHandle == null)
-                { // If this is an synchronous request get the response
-                    Message response = _responder.receive(timeout*1000);
-                    if (response == null)
-                    {
-                        subscription.cancel();
-                        _log.info("No response received in refreshSubscription()");
-                        throw new QmfException("No response received for Console.refreshSubscription()");
-                    }
-                    SubscribeParams result = new SubscribeParams(consoleHandle, AMQPMessage.getMap(response));
-                    subscriptionId = result.getSubscriptionId();
-                    if (subscriptionId == null)
-                    {
-                        subscription.cancel();
-                    }
-                    else
-                    {
-                        subscription.setDuration(result.getLifetime());
-                        subscription.refresh();
-                    }
-                    return result;
+            if (replyHandle == null)
+            { // If this is an synchronous request get the response
+                String correlationId = sendRequest(request);
+                Message response = null;
+                try
+                {
+                    response = receiveResponse(correlationId, timeout*1000);
+                }
+                finally
+                {
+                    completeRequest(correlationId);
+                }
+                if (response == null)
+                {
+                    subscription.cancel();
+                    _log.info("No response received in refreshSubscription()");
+                    throw new QmfException("No response received for Console.refreshSubscription()");
+                }
+                SubscribeParams result = new SubscribeParams(consoleHandle, AMQPMessage.getMap(response));
+                subscriptionId = result.getSubscriptionId();
+                if (subscriptionId == null)
+                {
+                    subscription.cancel();
                 }
+                else
+                {
+                    subscription.setDuration(result.getLifetime());
+                    subscription.refresh();
+                }
+                return result;
             }
+
             // If this is an asynchronous request return without waiting for a response
+            send(request);
             return null;
         }
         catch (JMSException jmse)
@@ -2220,12 +3242,9 @@ public final class Console implements MessageListener, AgentProxy
             request.setStringProperty("qpid.subject", agentName);
             request.setObject("_subscription_id", subscriptionId);
 
-            synchronized(this)
+            if (!_subscriptionEmulationEnabled || !agentName.equals(_brokerAgentName))
             {
-                if (!_subscriptionEmulationEnabled || !agentName.equals(_brokerAgentName))
-                {
-                    _requester.send(request);
-                }
+                send(request);
             }
             subscription.cancel();
         }
@@ -0,0 +1,43 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+import java.util.List;
+
+/**
+ * An ObjectBatchListener is passed to Console.streamObjects() in order to receive the results of a query one batch
+ * at a time, as each (possibly partial) response arrives from the Agent, rather than waiting for the complete
+ * result set to be accumulated into a single List.
+ * <p>
+ * Each batch is only decoded once the previous call to onBatch() has returned, so a slow consumer naturally throttles
+ * the decoding of later batches, and returning false from onBatch() stops the query early. Any further responses
+ * are then discarded without being decoded.
+ */
+public interface ObjectBatchListener
+{
+    /**
+     * Passes a batch of QmfConsoleData received from the Agent to the listener.
+     *
+     * @param batch the QmfConsoleData objects decoded from a single response message.
+     * @return true to continue receiving batches, false to stop the query early.
+     */
+    public boolean onBatch(List<QmfConsoleData> batch);
+}
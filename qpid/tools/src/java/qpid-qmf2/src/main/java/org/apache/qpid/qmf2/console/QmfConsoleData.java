@@ -29,6 +29,7 @@ import java.util.Map;
 import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfFuture;
 import org.apache.qpid.qmf2.common.QmfManaged;
 import org.apache.qpid.qmf2.common.SchemaClassId;
 
@@ -182,7 +183,16 @@ public class QmfConsoleData extends QmfManaged
         {
             throw new QmfException("QmfConsoleData.refresh() called with null Agent");
         }
-        QmfConsoleData newContents = _agent.refresh(getObjectId(), null, timeout);
+        update(_agent.refresh(getObjectId(), null, timeout));
+    }
+
+    /**
+     * Update this object's contents with the results of a refresh.
+     *
+     * @param newContents the refreshed object, or null if the object no longer exists.
+     */
+    private void update(final QmfConsoleData newContents)
+    {
         if (newContents == null)
         {
             _deleteTimestamp = System.currentTimeMillis()*1000000l;
@@ -199,6 +209,40 @@ public class QmfConsoleData extends QmfManaged
         }
     }
 
+    /**
+     * Request that the Agent updates the value of this object's contents, returning a QmfFuture that is completed
+     * with this object once its contents have been updated.
+     *
+     * @param timeout the maximum time in seconds to wait for a response, a value of -1 means use the default.
+     * @return a QmfFuture that will be completed with this (refreshed) object.
+     */    
+    public final QmfFuture<QmfConsoleData> refreshAsync(final int timeout)
+    {
+        if (_agent == null)
+        {
+            return QmfFuture.failed(new QmfException("QmfConsoleData.refreshAsync() called with null Agent"));
+        }
+
+        final QmfFuture<QmfConsoleData> result = new QmfFuture<QmfConsoleData>();
+        _agent.refreshAsync(getObjectId(), timeout).addListener(new QmfFuture.Listener<QmfConsoleData>()
+        {
+            public void onComplete(final QmfFuture<QmfConsoleData> future)
+            {
+                QmfException exception = future.getException();
+                if (exception == null)
+                {
+                    update(future.getResult());
+                    result.complete(QmfConsoleData.this);
+                }
+                else
+                {
+                    result.fail(exception);
+                }
+            }
+        });
+        return result;
+    }
+
     /**
      * Request that the Agent updates the value of this object's contents asynchronously.
      *
@@ -262,6 +306,22 @@ public class QmfConsoleData extends QmfManaged
         _agent.invokeMethod(getObjectId(), name, inArgs, replyHandle);
     }
 
+    /**
+     * Invoke the named method on this instance, asynchronously.
+     *
+     * @param name name of the method to invoke.
+     * @param inArgs inArgs an unordered set of key/value pairs comprising the method arguments.
+     * @return a QmfFuture that will be completed with the MethodResult, or failed if the method raised an exception.
+     */    
+    public final QmfFuture<MethodResult> invokeMethodAsync(final String name, final QmfData inArgs)
+    {
+        if (_agent == null)
+        {
+            return QmfFuture.failed(new QmfException("QmfConsoleData.invokeMethodAsync() called with null Agent"));
+        }
+        return _agent.invokeMethodAsync(getObjectId(), name, inArgs, -1);
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
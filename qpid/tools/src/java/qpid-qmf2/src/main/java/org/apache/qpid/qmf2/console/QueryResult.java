@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+import java.util.List;
+
+/**
+ * Holds the result of a getObjects() query that has been sent to a number of Agents at once.
+ * <p>
+ * The query is sent to all of the target Agents concurrently and their replies are collected under a single shared
+ * timeout, so a slow or dead Agent delays the result by at most that timeout rather than one timeout per Agent.
+ * If the timeout expires before every Agent has replied the results received to date are returned and the Agents
+ * that failed to reply in time are listed by getTimedOutAgents().
+ */
+public final class QueryResult
+{
+    private final List<QmfConsoleData> _data;
+    private final List<Agent> _timedOutAgents;
+
+    /**
+     * Construct a QueryResult from the list of QmfConsoleData received and the list of Agents that didn't reply.
+     * @param data the list of QmfConsoleData received from the Agents that were queried.
+     * @param timedOutAgents the list of Agents that failed to (completely) reply before the timeout expired.
+     */
+    public QueryResult(final List<QmfConsoleData> data, final List<Agent> timedOutAgents)
+    {
+        _data = data;
+        _timedOutAgents = timedOutAgents;
+    }
+
+    /**
+     * Return a list containing the QmfConsoleData objects received from all of the Agents that were queried.
+     * @return a list containing the QmfConsoleData objects received from all of the Agents that were queried.
+     */
+    public List<QmfConsoleData> getData()
+    {
+        return _data;
+    }
+
+    /**
+     * Return the Agents that failed to reply, or only sent partial results, before the timeout expired.
+     * @return the Agents that failed to reply, or only sent partial results, before the timeout expired.
+     */
+    public List<Agent> getTimedOutAgents()
+    {
+        return _timedOutAgents;
+    }
+
+    /**
+     * Return true if every Agent that was queried sent a complete reply before the timeout expired.
+     * @return true if every Agent that was queried sent a complete reply before the timeout expired.
+     */
+    public boolean isComplete()
+    {
+        return _timedOutAgents.size() == 0;
+    }
+}
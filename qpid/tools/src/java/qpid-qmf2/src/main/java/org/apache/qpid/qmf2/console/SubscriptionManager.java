@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.TimerTask;
 
 // QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfFuture;
 import org.apache.qpid.qmf2.common.QmfQuery;
 
 /** 
@@ -69,6 +70,7 @@ public final class SubscriptionManager extends TimerTask
     private long     _duration = 0;
     private long     _interval = 0;
     private boolean  _waiting = true;
+    private QmfFuture<SubscribeParams> _future;
 
     /**
      * Construct a Console side proxy of a Subscription. Primarily to manage references to the Subscription.
@@ -208,6 +210,24 @@ public final class SubscriptionManager extends TimerTask
         return _replyHandle;
     }
 
+    /**
+     * Set the QmfFuture to be completed when the Agent responds to an asynchronous createSubscriptionAsync().
+     * @param future the QmfFuture to be completed when the Agent responds.
+     */
+    public void setFuture(final QmfFuture<SubscribeParams> future)
+    {
+        _future = future;
+    }
+
+    /**
+     * Return the QmfFuture to be completed when the Agent responds to an asynchronous createSubscriptionAsync().
+     * @return the QmfFuture to be completed when the Agent responds, or null if not created asynchronously.
+     */
+    public QmfFuture<SubscribeParams> getFuture()
+    {
+        return _future;
+    }
+
     /**
      * Return the Agent running this Subscription.
      * @return the Agent running this Subscription.